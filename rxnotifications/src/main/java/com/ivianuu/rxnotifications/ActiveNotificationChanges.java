@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents a change of the active notifications
+ */
+public final class ActiveNotificationChanges {
+
+    private final long version;
+    private final boolean snapshot;
+    private final List<StatusBarNotification> added;
+    private final List<StatusBarNotification> updated;
+    private final List<String> removedKeys;
+
+    ActiveNotificationChanges(long version,
+                              boolean snapshot,
+                              @NonNull List<StatusBarNotification> added,
+                              @NonNull List<StatusBarNotification> updated,
+                              @NonNull List<String> removedKeys) {
+        this.version = version;
+        this.snapshot = snapshot;
+        this.added = Collections.unmodifiableList(added);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removedKeys = Collections.unmodifiableList(removedKeys);
+    }
+
+    @NonNull
+    static ActiveNotificationChanges posted(long version, @NonNull StatusBarNotification sbn, boolean update) {
+        List<StatusBarNotification> notifications = Collections.singletonList(sbn);
+        List<StatusBarNotification> empty = Collections.emptyList();
+        return new ActiveNotificationChanges(version, false,
+                update ? empty : notifications, update ? notifications : empty,
+                Collections.emptyList());
+    }
+
+    @NonNull
+    static ActiveNotificationChanges removed(long version, @NonNull String key) {
+        return new ActiveNotificationChanges(version, false,
+                Collections.emptyList(), Collections.emptyList(),
+                Collections.singletonList(key));
+    }
+
+    /**
+     * Returns the version of the active notifications after this change
+     * Versions are increasing monotonically
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns whether this change replaces all previously known notifications
+     * If true {@link #getAdded()} contains all active notifications
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the notifications which were added
+     */
+    @NonNull
+    public List<StatusBarNotification> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the notifications which were updated
+     */
+    @NonNull
+    public List<StatusBarNotification> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Returns the keys of the notifications which were removed
+     */
+    @NonNull
+    public List<String> getRemovedKeys() {
+        return removedKeys;
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory mirror of the active notifications keyed by the notification key
+ */
+final class ActiveNotificationIndex {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final boolean retainNotifications;
+
+    private boolean seeded;
+    private boolean initialized;
+    private long version;
+
+    /**
+     * Constructs a new index which only keeps slim snapshots if retain notifications is false
+     */
+    ActiveNotificationIndex(boolean retainNotifications) {
+        this.retainNotifications = retainNotifications;
+    }
+
+    /**
+     * Replaces the whole index with the provided notifications
+     */
+    synchronized void seed(@Nullable StatusBarNotification[] activeNotifications) {
+        entries.clear();
+        if (activeNotifications != null) {
+            for (StatusBarNotification sbn : activeNotifications) {
+                entries.put(Util.getKey(sbn), new Entry(sbn));
+            }
+        }
+        seeded = true;
+        initialized = true;
+        version++;
+    }
+
+    /**
+     * Replaces the index with the provided notifications and returns the changes
+     * compared to the last known state or null if the index was never seeded before
+     */
+    @Nullable
+    synchronized Reconciliation reconcile(@Nullable StatusBarNotification[] activeNotifications) {
+        if (!initialized) {
+            seed(activeNotifications);
+            return null;
+        }
+
+        Reconciliation reconciliation = new Reconciliation();
+        if (activeNotifications == null) {
+            // the system didn't answer so keep the last known state
+            seeded = true;
+            return reconciliation;
+        }
+
+        Map<String, Entry> previous = new LinkedHashMap<>(entries);
+        entries.clear();
+        for (StatusBarNotification sbn : activeNotifications) {
+            String key = Util.getKey(sbn);
+            Entry entry = previous.remove(key);
+            if (entry == null) {
+                reconciliation.posted.add(sbn);
+                entries.put(key, new Entry(sbn));
+            } else if (entry.getPostTime() != sbn.getPostTime()) {
+                reconciliation.updated.add(sbn);
+                entries.put(key, new Entry(sbn));
+            } else {
+                entries.put(key, entry);
+            }
+        }
+
+        for (Map.Entry<String, Entry> removed : previous.entrySet()) {
+            reconciliation.removedKeys.add(removed.getKey());
+            reconciliation.removedSnapshots.add(removed.getValue().getSnapshot());
+            if (removed.getValue().sbn != null) {
+                reconciliation.removed.add(removed.getValue().sbn);
+            }
+        }
+
+        seeded = true;
+        if (!reconciliation.isEmpty()) {
+            version++;
+        }
+        return reconciliation;
+    }
+
+    /**
+     * Adds or replaces the notification and returns whether it replaced a previous one
+     */
+    synchronized boolean put(@NonNull StatusBarNotification sbn) {
+        version++;
+        return entries.put(Util.getKey(sbn), new Entry(sbn)) != null;
+    }
+
+    /**
+     * Replaces the entry of an already active notification without a version change
+     * Used for re-posts whose content didn't change
+     */
+    synchronized void refresh(@NonNull StatusBarNotification sbn) {
+        String key = Util.getKey(sbn);
+        if (entries.containsKey(key)) {
+            entries.put(key, new Entry(sbn));
+        } else {
+            put(sbn);
+        }
+    }
+
+    /**
+     * Removes the notification and returns whether it was active
+     */
+    synchronized boolean remove(@NonNull StatusBarNotification sbn) {
+        boolean removed = entries.remove(Util.getKey(sbn)) != null;
+        if (removed) {
+            version++;
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the notification for the key or null if unknown or not retained
+     */
+    @Nullable
+    synchronized StatusBarNotification get(@NonNull String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.sbn : null;
+    }
+
+    /**
+     * Returns the notification snapshot for the key
+     */
+    @Nullable
+    synchronized NotificationSnapshot getSnapshot(@NonNull String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.getSnapshot() : null;
+    }
+
+    /**
+     * Returns whether the full notifications are kept in memory
+     */
+    boolean isRetainingNotifications() {
+        return retainNotifications;
+    }
+
+    /**
+     * Returns whether the index was seeded since the listener connected
+     */
+    synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    /**
+     * Marks the index as outdated but keeps the last known state for reconciliation
+     */
+    synchronized void invalidate() {
+        seeded = false;
+    }
+
+    /**
+     * Returns the version of the index which is incremented on every change
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the current state as a snapshot change
+     * Must only be called if notifications are retained
+     */
+    @NonNull
+    synchronized ActiveNotificationChanges snapshotChanges() {
+        return new ActiveNotificationChanges(version, true, snapshot(),
+                Collections.emptyList(), Collections.emptyList());
+    }
+
+    /**
+     * Returns a copy of the current active notifications
+     * Must only be called if notifications are retained
+     */
+    @NonNull
+    synchronized List<StatusBarNotification> snapshot() {
+        List<StatusBarNotification> notifications = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            notifications.add(entry.sbn);
+        }
+        return notifications;
+    }
+
+    /**
+     * Returns the slim snapshots of the current active notifications
+     */
+    @NonNull
+    synchronized List<NotificationSnapshot> snapshots() {
+        List<NotificationSnapshot> snapshots = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            snapshots.add(entry.getSnapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Returns the count of active notifications
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Changes which happened while the listener was disconnected
+     */
+    static final class Reconciliation {
+
+        final List<StatusBarNotification> posted = new ArrayList<>();
+        final List<StatusBarNotification> updated = new ArrayList<>();
+        final List<String> removedKeys = new ArrayList<>();
+        final List<NotificationSnapshot> removedSnapshots = new ArrayList<>();
+        // only filled if notifications are retained
+        final List<StatusBarNotification> removed = new ArrayList<>();
+
+        boolean isEmpty() {
+            return posted.isEmpty() && updated.isEmpty() && removedKeys.isEmpty();
+        }
+    }
+
+    private final class Entry {
+
+        private final StatusBarNotification sbn;
+        private NotificationSnapshot snapshot;
+
+        private Entry(StatusBarNotification sbn) {
+            if (retainNotifications) {
+                // the snapshot unparcels the extras so it's only built once somebody asks for it
+                this.sbn = sbn;
+            } else {
+                this.sbn = null;
+                this.snapshot = NotificationSnapshot.from(sbn);
+            }
+        }
+
+        private NotificationSnapshot getSnapshot() {
+            if (snapshot == null) {
+                snapshot = NotificationSnapshot.from(sbn);
+            }
+            return snapshot;
+        }
+
+        private long getPostTime() {
+            return sbn != null ? sbn.getPostTime() : snapshot.getPostTime();
+        }
+    }
+}
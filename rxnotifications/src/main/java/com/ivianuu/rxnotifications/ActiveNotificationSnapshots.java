@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Slim snapshots of the active notifications which might be provisional
+ */
+public final class ActiveNotificationSnapshots {
+
+    private final List<NotificationSnapshot> snapshots;
+    private final boolean stale;
+
+    ActiveNotificationSnapshots(@NonNull List<NotificationSnapshot> snapshots, boolean stale) {
+        this.snapshots = Collections.unmodifiableList(snapshots);
+        this.stale = stale;
+    }
+
+    /**
+     * Returns the snapshots of the active notifications
+     */
+    @NonNull
+    public List<NotificationSnapshot> getSnapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Returns whether these snapshots were restored from disk and the listener is not connected yet
+     * Stale snapshots might contain notifications which were removed in the meantime
+     */
+    public boolean isStale() {
+        return stale;
+    }
+}
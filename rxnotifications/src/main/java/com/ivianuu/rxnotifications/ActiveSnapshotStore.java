@@ -0,0 +1,432 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Persists the slim snapshots of the active notifications
+ *
+ * The state is stored as a base file plus a journal of puts and removes which is appended
+ * asynchronously. The base file is rewritten once the journal grows larger than the state.
+ * Both files carry the generation of the base so a journal which outlived its base is ignored.
+ */
+final class ActiveSnapshotStore {
+
+    private static final String DIRECTORY = "rxnotifications";
+    private static final String BASE_FILE = "active_snapshots";
+    private static final String JOURNAL_FILE = "active_snapshots.journal";
+
+    private static final int MAGIC = 0x52584e53;
+    private static final int FORMAT_VERSION = 2;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private static final int MIN_COMPACTION_RECORDS = 64;
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int MAX_SNAPSHOTS = 1 << 16;
+    private static final long MIN_RETRY_DELAY_MILLIS = 1000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60 * 1000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File baseFile;
+    private final File journalFile;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "RxNotifications-snapshots"));
+
+    private final Map<String, NotificationSnapshot> snapshots = new LinkedHashMap<>();
+    private final List<Record> pending = new ArrayList<>();
+    private boolean rewrite;
+    private boolean flushScheduled;
+
+    // only accessed by the executor
+    private DataOutputStream journal;
+    private int journalRecords;
+    private long generation;
+    private long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+
+    private final Runnable flush = this::flush;
+
+    ActiveSnapshotStore(@NonNull Context context) {
+        File directory = getDirectory(context);
+        this.baseFile = new File(directory, BASE_FILE);
+        this.journalFile = new File(directory, JOURNAL_FILE);
+    }
+
+    /**
+     * Loads the persisted snapshots or returns an empty list if there are none or the base is damaged
+     * A torn or corrupted journal tail is ignored
+     */
+    @NonNull
+    static List<NotificationSnapshot> load(@NonNull Context context) {
+        File directory = getDirectory(context);
+        Map<String, NotificationSnapshot> snapshots = new LinkedHashMap<>();
+
+        File baseFile = new File(directory, BASE_FILE);
+        if (!baseFile.exists()) {
+            return Collections.emptyList();
+        }
+
+        long generation;
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(baseFile)), new CRC32());
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return Collections.emptyList();
+            }
+            generation = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || count > MAX_SNAPSHOTS) {
+                return Collections.emptyList();
+            }
+            for (int i = 0; i < count; i++) {
+                NotificationSnapshot snapshot = readSnapshot(in);
+                snapshots.put(snapshot.getKey(), snapshot);
+            }
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum) {
+                return Collections.emptyList();
+            }
+        } catch (IOException | RuntimeException e) {
+            // a damaged base must never keep the app from starting
+            return Collections.emptyList();
+        }
+
+        File journalFile = new File(directory, JOURNAL_FILE);
+        if (journalFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(journalFile)))) {
+                if (in.readInt() == MAGIC && in.readLong() == generation) {
+                    while (readRecord(in, snapshots)) {
+                        // apply until the end or the first damaged record
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // keep the records which were read so far
+            }
+        }
+
+        return new ArrayList<>(snapshots.values());
+    }
+
+    /**
+     * Persists the added or updated snapshot
+     */
+    void put(@NonNull NotificationSnapshot snapshot) {
+        synchronized (this) {
+            snapshots.put(snapshot.getKey(), snapshot);
+            pending.add(new Record(OP_PUT, snapshot.getKey(), snapshot));
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Persists the removal of the snapshot with the key
+     */
+    void remove(@NonNull String key) {
+        synchronized (this) {
+            if (snapshots.remove(key) != null) {
+                pending.add(new Record(OP_REMOVE, key, null));
+                scheduleFlush();
+            }
+        }
+    }
+
+    /**
+     * Replaces the whole persisted state
+     */
+    void replaceAll(@NonNull List<NotificationSnapshot> snapshots) {
+        synchronized (this) {
+            this.snapshots.clear();
+            for (NotificationSnapshot snapshot : snapshots) {
+                this.snapshots.put(snapshot.getKey(), snapshot);
+            }
+            pending.clear();
+            rewrite = true;
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Writes the pending changes and releases the resources
+     */
+    void shutdown() {
+        executor.execute(this::closeJournal);
+        executor.shutdown();
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            executor.execute(flush);
+        }
+    }
+
+    private void flush() {
+        List<Record> records;
+        List<NotificationSnapshot> state = null;
+        synchronized (this) {
+            flushScheduled = false;
+            records = new ArrayList<>(pending);
+            pending.clear();
+            int compactionThreshold = Math.max(MIN_COMPACTION_RECORDS, snapshots.size());
+            if (rewrite || journalRecords + records.size() > compactionThreshold) {
+                state = new ArrayList<>(snapshots.values());
+                rewrite = false;
+            }
+        }
+
+        try {
+            if (state != null) {
+                writeBase(state);
+            } else {
+                appendJournal(records);
+            }
+            retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+        } catch (IOException e) {
+            // the journal might be damaged now so start over from the full state
+            closeJournal();
+            synchronized (this) {
+                rewrite = true;
+                // retry with backoff as there might be no further change to trigger a flush
+                if (!flushScheduled && !executor.isShutdown()) {
+                    flushScheduled = true;
+                    executor.schedule(flush, retryDelayMillis, TimeUnit.MILLISECONDS);
+                }
+            }
+            retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+        }
+    }
+
+    private void writeBase(List<NotificationSnapshot> state) throws IOException {
+        closeJournal();
+
+        File directory = baseFile.getParentFile();
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("couldn't create " + directory);
+        }
+
+        // write a temp file and rename it so a crash never leaves a half written base
+        long nextGeneration = System.currentTimeMillis();
+        File tempFile = new File(directory, BASE_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tempFile)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(nextGeneration);
+            out.writeInt(state.size());
+            for (NotificationSnapshot snapshot : state) {
+                writeSnapshot(out, snapshot);
+            }
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            // the rename must not become visible before the content is on disk
+            file.getFD().sync();
+        }
+        if (!tempFile.renameTo(baseFile)) {
+            throw new IOException("couldn't replace " + baseFile);
+        }
+
+        generation = nextGeneration;
+        journalFile.delete();
+        journalRecords = 0;
+    }
+
+    private void appendJournal(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        if (generation == 0) {
+            // nothing was written by this process yet so the journal has no base to refer to
+            throw new IOException("no base written yet");
+        }
+
+        if (journal == null) {
+            // the journal is only reopened after a base was written so it always starts fresh
+            journal = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(journalFile)));
+            journal.writeInt(MAGIC);
+            journal.writeLong(generation);
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(buffer);
+        CRC32 crc = new CRC32();
+        for (Record record : records) {
+            buffer.reset();
+            if (record.op == OP_PUT) {
+                writeSnapshot(payload, record.snapshot);
+            } else {
+                writeString(payload, record.key);
+            }
+            payload.flush();
+
+            byte[] bytes = buffer.toByteArray();
+            crc.reset();
+            crc.update(bytes, 0, bytes.length);
+
+            journal.writeByte(record.op);
+            journal.writeInt(bytes.length);
+            journal.write(bytes);
+            journal.writeLong(crc.getValue());
+        }
+        journal.flush();
+        journalRecords += records.size();
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ignored) {
+            }
+            journal = null;
+        }
+    }
+
+    private static boolean readRecord(DataInputStream in,
+                                      Map<String, NotificationSnapshot> snapshots) throws IOException {
+        int op;
+        byte[] bytes;
+        long checksum;
+        try {
+            op = in.readByte();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_RECORD_SIZE) {
+                return false;
+            }
+            bytes = new byte[length];
+            in.readFully(bytes);
+            checksum = in.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        if (crc.getValue() != checksum) {
+            return false;
+        }
+
+        DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (op == OP_PUT) {
+            NotificationSnapshot snapshot = readSnapshot(payload);
+            snapshots.put(snapshot.getKey(), snapshot);
+        } else if (op == OP_REMOVE) {
+            snapshots.remove(readString(payload));
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static void writeSnapshot(DataOutputStream out, NotificationSnapshot snapshot) throws IOException {
+        writeString(out, snapshot.getKey());
+        writeString(out, snapshot.getPackageName());
+        out.writeInt(snapshot.getId());
+        writeString(out, snapshot.getTag());
+        out.writeLong(snapshot.getPostTime());
+        out.writeInt(snapshot.getFlags());
+        writeString(out, snapshot.getChannelId());
+        writeString(out, snapshot.getGroupKey());
+        writeString(out, snapshot.getTitle());
+        writeString(out, snapshot.getText());
+    }
+
+    private static NotificationSnapshot readSnapshot(DataInputStream in) throws IOException {
+        String key = readString(in);
+        String packageName = readString(in);
+        if (key == null || packageName == null) {
+            throw new IOException("corrupted snapshot");
+        }
+        return new NotificationSnapshot(key, packageName, in.readInt(), readString(in),
+                in.readLong(), in.readInt(), readString(in), readString(in),
+                readString(in), readString(in));
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_RECORD_SIZE) {
+            throw new IOException("corrupted string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static File getDirectory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY);
+    }
+
+    private static final class Record {
+
+        private final byte op;
+        private final String key;
+        private final NotificationSnapshot snapshot;
+
+        private Record(byte op, String key, NotificationSnapshot snapshot) {
+            this.op = op;
+            this.key = key;
+            this.snapshot = snapshot;
+        }
+    }
+}
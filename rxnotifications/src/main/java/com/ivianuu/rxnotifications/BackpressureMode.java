@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Flowable;
+
+/**
+ * Describes how an event stream behaves if a subscriber can't keep up
+ */
+public final class BackpressureMode {
+
+    private static final BackpressureMode ERROR = new BackpressureMode(0);
+    private static final BackpressureMode LATEST = new BackpressureMode(1);
+
+    private final int capacity;
+
+    private BackpressureMode(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Signals a missing backpressure exception to slow subscribers
+     */
+    @NonNull
+    public static BackpressureMode error() {
+        return ERROR;
+    }
+
+    /**
+     * Keeps only the latest event for slow subscribers
+     */
+    @NonNull
+    public static BackpressureMode latest() {
+        return LATEST;
+    }
+
+    /**
+     * Buffers up to capacity events per subscriber and drops the oldest ones if the buffer is full
+     */
+    @NonNull
+    public static BackpressureMode dropOldest(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        return new BackpressureMode(capacity);
+    }
+
+    /**
+     * Returns the buffer capacity per subscriber or 0 if events are not buffered
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @NonNull
+    <T> Flowable<T> apply(@NonNull Flowable<T> upstream, @NonNull AtomicLong droppedEvents) {
+        if (capacity == 0) {
+            return upstream;
+        } else {
+            return new FlowableOnBackpressureDropOldest<>(upstream, capacity, droppedEvents);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+/**
+ * Hit and miss counters of a cache
+ */
+public final class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final int size;
+
+    CacheStats(long hits, long misses, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+    }
+
+    /**
+     * Returns how often a value was served from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns how often a value had to be loaded
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the current count of cached entries
+     */
+    public int getSize() {
+        return size;
+    }
+}
@@ -34,7 +34,7 @@ import static android.service.notification.NotificationListenerService.NOTIFICAT
  * Represents a channel modified event
  */
 @RequiresApi(api = Build.VERSION_CODES.O)
-public final class ChannelEvent {
+public final class ChannelEvent implements SequencedEvent {
 
     @IntDef(value = {
             NOTIFICATION_CHANNEL_OR_GROUP_ADDED,
@@ -48,6 +48,9 @@ public final class ChannelEvent {
     private UserHandle user;
     private NotificationChannel notificationChannel;
     private int eventType;
+    private long sequence;
+    private long streamSequence;
+    private long timestampNanos;
 
     /**
      * Constructs a new channel modified event
@@ -62,6 +65,27 @@ public final class ChannelEvent {
         this.eventType = eventType;
     }
 
+    void stamp(long sequence, long streamSequence, long timestampNanos) {
+        this.sequence = sequence;
+        this.streamSequence = streamSequence;
+        this.timestampNanos = timestampNanos;
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public long getStreamSequence() {
+        return streamSequence;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
     /**
      * Returns the channel of this event
      */
@@ -34,7 +34,7 @@ import static android.service.notification.NotificationListenerService.NOTIFICAT
  * Represents a channel group event
  */
 @RequiresApi(Build.VERSION_CODES.O)
-public final class ChannelGroupEvent {
+public final class ChannelGroupEvent implements SequencedEvent {
 
     @IntDef(value = {
             NOTIFICATION_CHANNEL_OR_GROUP_ADDED,
@@ -48,6 +48,9 @@ public final class ChannelGroupEvent {
     private UserHandle user;
     private NotificationChannelGroup notificationChannelGroup;
     private int eventType;
+    private long sequence;
+    private long streamSequence;
+    private long timestampNanos;
 
     /**
      * Constructs a new channel group event
@@ -62,6 +65,27 @@ public final class ChannelGroupEvent {
         this.eventType = eventType;
     }
 
+    void stamp(long sequence, long streamSequence, long timestampNanos) {
+        this.sequence = sequence;
+        this.streamSequence = streamSequence;
+        this.timestampNanos = timestampNanos;
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public long getStreamSequence() {
+        return streamSequence;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
     /**
      * Returns the package name of this event
      */
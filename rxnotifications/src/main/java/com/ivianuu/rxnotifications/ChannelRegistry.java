@@ -0,0 +1,239 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.UserHandle;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static android.service.notification.NotificationListenerService.NOTIFICATION_CHANNEL_OR_GROUP_DELETED;
+
+/**
+ * Caches the channels and channel groups per package and user
+ * Entries are loaded on demand and kept up to date by the channel events, only copies are handed out
+ */
+@RequiresApi(api = Build.VERSION_CODES.O)
+final class ChannelRegistry {
+
+    private final RxNotificationListenerService service;
+
+    private final Map<PackageUser, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long modifications;
+
+    ChannelRegistry(@NonNull RxNotificationListenerService service, final int maxPackages) {
+        this.service = service;
+        this.entries = new LinkedHashMap<PackageUser, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PackageUser, Entry> eldest) {
+                return size() > maxPackages;
+            }
+        };
+    }
+
+    @NonNull
+    List<NotificationChannel> getChannels(@NonNull String pkg, @NonNull UserHandle user) {
+        PackageUser packageUser = new PackageUser(pkg, user);
+        synchronized (this) {
+            Entry entry = entries.get(packageUser);
+            if (entry != null && entry.channels != null) {
+                hits++;
+                return copyChannels(entry.channels);
+            }
+            misses++;
+        }
+
+        long modifications = getModifications();
+        List<NotificationChannel> channels = service.getNotificationChannels(pkg, user);
+
+        synchronized (this) {
+            // don't cache results which might miss a modification
+            if (modifications == this.modifications) {
+                entry(packageUser).channels = copyChannels(channels);
+            }
+        }
+
+        return channels;
+    }
+
+    @NonNull
+    List<NotificationChannelGroup> getChannelGroups(@NonNull String pkg, @NonNull UserHandle user) {
+        PackageUser packageUser = new PackageUser(pkg, user);
+        synchronized (this) {
+            Entry entry = entries.get(packageUser);
+            if (entry != null && entry.groups != null) {
+                hits++;
+                return copyGroups(entry.groups);
+            }
+            misses++;
+        }
+
+        long modifications = getModifications();
+        List<NotificationChannelGroup> groups = service.getNotificationChannelGroups(pkg, user);
+
+        synchronized (this) {
+            if (modifications == this.modifications) {
+                entry(packageUser).groups = copyGroups(groups);
+            }
+        }
+
+        return groups;
+    }
+
+    synchronized void onChannelEvent(@NonNull ChannelEvent event) {
+        modifications++;
+        Entry entry = entries.get(new PackageUser(event.getPackageName(), event.getUser()));
+        if (entry == null || entry.channels == null) {
+            return;
+        }
+
+        NotificationChannel channel = event.getNotificationChannel();
+        Iterator<NotificationChannel> iterator = entry.channels.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getId().equals(channel.getId())) {
+                iterator.remove();
+                break;
+            }
+        }
+
+        if (event.getEventType() != NOTIFICATION_CHANNEL_OR_GROUP_DELETED) {
+            entry.channels.add(copy(channel, NotificationChannel.CREATOR));
+        }
+    }
+
+    synchronized void onChannelGroupEvent(@NonNull ChannelGroupEvent event) {
+        modifications++;
+        Entry entry = entries.get(new PackageUser(event.getPackageName(), event.getUser()));
+        if (entry == null || entry.groups == null) {
+            return;
+        }
+
+        NotificationChannelGroup group = event.getNotificationChannelGroup();
+        Iterator<NotificationChannelGroup> iterator = entry.groups.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getId().equals(group.getId())) {
+                iterator.remove();
+                break;
+            }
+        }
+
+        if (event.getEventType() != NOTIFICATION_CHANNEL_OR_GROUP_DELETED) {
+            entry.groups.add(copy(group, NotificationChannelGroup.CREATOR));
+        }
+    }
+
+    /**
+     * Drops the cached channels and groups of the package and user
+     */
+    synchronized void invalidate(@NonNull String pkg, @NonNull UserHandle user) {
+        modifications++;
+        entries.remove(new PackageUser(pkg, user));
+    }
+
+    synchronized void clear() {
+        modifications++;
+        entries.clear();
+    }
+
+    @NonNull
+    synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, entries.size());
+    }
+
+    private synchronized long getModifications() {
+        return modifications;
+    }
+
+    // channels are mutable so neither callers nor event subscribers may share the cached instances
+    private static List<NotificationChannel> copyChannels(List<NotificationChannel> channels) {
+        List<NotificationChannel> copies = new ArrayList<>(channels.size());
+        for (NotificationChannel channel : channels) {
+            copies.add(copy(channel, NotificationChannel.CREATOR));
+        }
+        return copies;
+    }
+
+    private static List<NotificationChannelGroup> copyGroups(List<NotificationChannelGroup> groups) {
+        List<NotificationChannelGroup> copies = new ArrayList<>(groups.size());
+        for (NotificationChannelGroup group : groups) {
+            copies.add(copy(group, NotificationChannelGroup.CREATOR));
+        }
+        return copies;
+    }
+
+    private static <T extends Parcelable> T copy(T value, Parcelable.Creator<T> creator) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            value.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            return creator.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private Entry entry(PackageUser packageUser) {
+        Entry entry = entries.get(packageUser);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(packageUser, entry);
+        }
+        return entry;
+    }
+
+    private static final class Entry {
+        private List<NotificationChannel> channels;
+        private List<NotificationChannelGroup> groups;
+    }
+
+    private static final class PackageUser {
+
+        private final String pkg;
+        private final UserHandle user;
+
+        private PackageUser(String pkg, UserHandle user) {
+            this.pkg = pkg;
+            this.user = user;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PackageUser)) return false;
+            PackageUser that = (PackageUser) o;
+            return pkg.equals(that.pkg) && user.equals(that.user);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * pkg.hashCode() + user.hashCode();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.os.UserHandle;
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces high frequency updates of the same notification key
+ *
+ * The first post of a key is delivered right away and opens a window, later posts within the window
+ * only replace the pending update which is delivered when the window expires. Removals are always
+ * delivered immediately. All windows share a single timer wheel which only ticks while windows are open.
+ * Must only be called from the dispatcher thread.
+ */
+final class CoalescingServiceCallbacks implements RxNotificationListenerService.ServiceCallbacks {
+
+    private static final int TICKS_PER_WINDOW = 4;
+    private static final int WHEEL_SIZE = 8;
+
+    private final Dispatcher dispatcher;
+    private final RxNotificationListenerService.ServiceCallbacks callbacks;
+    private final long tickMillis;
+
+    private final Map<String, Window> windows = new HashMap<>();
+    private final List<List<String>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private final Runnable tick = this::tick;
+
+    private long currentTick;
+    private boolean ticking;
+
+    CoalescingServiceCallbacks(@NonNull Dispatcher dispatcher,
+                               @NonNull RxNotificationListenerService.ServiceCallbacks callbacks,
+                               long windowMillis) {
+        this.dispatcher = dispatcher;
+        this.callbacks = callbacks;
+        this.tickMillis = Math.max(1, windowMillis / TICKS_PER_WINDOW);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+    }
+
+    @Override
+    public void onNotificationPosted(@NonNull StatusBarNotification sbn,
+                                     @Nullable NotificationListenerService.RankingMap rankingMap,
+                                     long receivedNanos) {
+        String key = Util.getKey(sbn);
+        Window window = windows.get(key);
+        if (window != null) {
+            // only the latest update within the window matters
+            window.pending = sbn;
+            window.pendingRankingMap = rankingMap;
+            window.pendingReceivedNanos = receivedNanos;
+            return;
+        }
+
+        window = new Window();
+        windows.put(key, window);
+        open(key, window);
+        callbacks.onNotificationPosted(sbn, rankingMap, receivedNanos);
+    }
+
+    @Override
+    public void onNotificationRemoved(@NonNull StatusBarNotification sbn,
+                                      @Nullable NotificationListenerService.RankingMap rankingMap,
+                                      long receivedNanos) {
+        // the pending update is obsolete and the wheel skips the stale slot entry
+        windows.remove(Util.getKey(sbn));
+        callbacks.onNotificationRemoved(sbn, rankingMap, receivedNanos);
+    }
+
+    @Override
+    public void onListenerConnectionChanged(boolean connected) {
+        // the listener re-seeds its state on connection changes
+        windows.clear();
+        for (List<String> slot : wheel) {
+            slot.clear();
+        }
+        callbacks.onListenerConnectionChanged(connected);
+    }
+
+    @Override
+    public void onNotificationChannelModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannel channel, int modificationType, long receivedNanos) {
+        callbacks.onNotificationChannelModified(pkg, user, channel, modificationType, receivedNanos);
+    }
+
+    @Override
+    public void onNotificationChannelGroupModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannelGroup group, int modificationType, long receivedNanos) {
+        callbacks.onNotificationChannelGroupModified(pkg, user, group, modificationType, receivedNanos);
+    }
+
+    @Override
+    public void onNotificationRankingUpdate(@NonNull NotificationListenerService.RankingMap rankingMap) {
+        callbacks.onNotificationRankingUpdate(rankingMap);
+    }
+
+    @Override
+    public void onInterruptionFilterChanged(int interruptionFilter) {
+        callbacks.onInterruptionFilterChanged(interruptionFilter);
+    }
+
+    @Override
+    public void onListenerHintsChanged(int hints) {
+        callbacks.onListenerHintsChanged(hints);
+    }
+
+    private void open(String key, Window window) {
+        window.expiresAt = currentTick + TICKS_PER_WINDOW;
+        wheel.get((int) (window.expiresAt % WHEEL_SIZE)).add(key);
+
+        if (!ticking) {
+            ticking = true;
+            dispatcher.schedule(tick, tickMillis);
+        }
+    }
+
+    private void tick() {
+        currentTick++;
+
+        List<String> slot = wheel.get((int) (currentTick % WHEEL_SIZE));
+        // keys which are re-opened land in another slot
+        for (int i = 0; i < slot.size(); i++) {
+            String key = slot.get(i);
+            Window window = windows.get(key);
+            if (window == null || window.expiresAt != currentTick) {
+                continue;
+            }
+
+            if (window.pending != null) {
+                StatusBarNotification sbn = window.pending;
+                NotificationListenerService.RankingMap rankingMap = window.pendingRankingMap;
+                window.pending = null;
+                window.pendingRankingMap = null;
+                open(key, window);
+                // the update keeps the time it was received at, not the time the window expired
+                callbacks.onNotificationPosted(sbn, rankingMap, window.pendingReceivedNanos);
+            } else {
+                windows.remove(key);
+            }
+        }
+        slot.clear();
+
+        if (windows.isEmpty()) {
+            ticking = false;
+        } else {
+            dispatcher.schedule(tick, tickMillis);
+        }
+    }
+
+    private static final class Window {
+        private long expiresAt;
+        private StatusBarNotification pending;
+        private NotificationListenerService.RankingMap pendingRankingMap;
+        private long pendingReceivedNanos;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import static com.ivianuu.rxnotifications.CommandBatch.CommandType.CANCEL;
+import static com.ivianuu.rxnotifications.CommandBatch.CommandType.SET_SHOWN;
+import static com.ivianuu.rxnotifications.CommandBatch.CommandType.SNOOZE;
+
+/**
+ * Represents a batch of notification commands which was sent to the system
+ */
+public final class CommandBatch {
+
+    @IntDef(value = {CANCEL, SNOOZE, SET_SHOWN})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface CommandType {
+        int CANCEL = 0;
+        int SNOOZE = 1;
+        int SET_SHOWN = 2;
+    }
+
+    private final int commandType;
+    private final int size;
+    private final long latencyNanos;
+
+    CommandBatch(@CommandType int commandType, int size, long latencyNanos) {
+        this.commandType = commandType;
+        this.size = size;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * Returns the command type of this batch
+     */
+    @CommandType
+    public int getCommandType() {
+        return commandType;
+    }
+
+    /**
+     * Returns the count of notification keys in this batch
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns how long the system took to process this batch in nanoseconds
+     */
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.FlowableProcessor;
+import io.reactivex.processors.PublishProcessor;
+
+import static com.ivianuu.rxnotifications.CommandBatch.CommandType.CANCEL;
+import static com.ivianuu.rxnotifications.CommandBatch.CommandType.SET_SHOWN;
+import static com.ivianuu.rxnotifications.CommandBatch.CommandType.SNOOZE;
+
+/**
+ * Sends notification commands to the system in deduplicated chunks
+ */
+final class CommandBatcher {
+
+    private final RxNotificationListenerService service;
+    private final int batchSize;
+
+    private final FlowableProcessor<CommandBatch> batchesSubject =
+            PublishProcessor.<CommandBatch>create().toSerialized();
+
+    CommandBatcher(@NonNull RxNotificationListenerService service, int batchSize) {
+        this.service = service;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Cancels the notifications and returns the ones which were sent to the system, once per key
+     */
+    @NonNull
+    Collection<StatusBarNotification> cancel(@NonNull Collection<StatusBarNotification> sbns) {
+        Map<String, StatusBarNotification> notifications = dedupe(sbns);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            String[] keys = notifications.keySet().toArray(new String[notifications.size()]);
+            for (int from = 0; from < keys.length; from += batchSize) {
+                String[] batch = Arrays.copyOfRange(keys, from, Math.min(keys.length, from + batchSize));
+                long start = SystemClock.elapsedRealtimeNanos();
+                service.cancelNotifications(batch);
+                publish(CANCEL, batch.length, start);
+            }
+        } else {
+            List<StatusBarNotification> values = new ArrayList<>(notifications.values());
+            for (int from = 0; from < values.size(); from += batchSize) {
+                List<StatusBarNotification> batch = values.subList(from, Math.min(values.size(), from + batchSize));
+                long start = SystemClock.elapsedRealtimeNanos();
+                for (StatusBarNotification sbn : batch) {
+                    service.cancelNotification(sbn.getPackageName(), sbn.getTag(), sbn.getId());
+                }
+                publish(CANCEL, batch.size(), start);
+            }
+        }
+        return notifications.values();
+    }
+
+    /**
+     * Sets the notifications as shown
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    void setShown(@NonNull Collection<StatusBarNotification> sbns) {
+        Map<String, StatusBarNotification> notifications = dedupe(sbns);
+        String[] keys = notifications.keySet().toArray(new String[notifications.size()]);
+        for (int from = 0; from < keys.length; from += batchSize) {
+            String[] batch = Arrays.copyOfRange(keys, from, Math.min(keys.length, from + batchSize));
+            long start = SystemClock.elapsedRealtimeNanos();
+            service.setNotificationsShown(batch);
+            publish(SET_SHOWN, batch.length, start);
+        }
+    }
+
+    /**
+     * Snoozes the notifications for the duration
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    void snooze(@NonNull Collection<StatusBarNotification> sbns, long duration) {
+        // there is no multi key snooze call so we only dedupe and chunk for the stats
+        Map<String, StatusBarNotification> notifications = dedupe(sbns);
+        String[] keys = notifications.keySet().toArray(new String[notifications.size()]);
+        for (int from = 0; from < keys.length; from += batchSize) {
+            int to = Math.min(keys.length, from + batchSize);
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = from; i < to; i++) {
+                service.snoozeNotification(keys[i], duration);
+            }
+            publish(SNOOZE, to - from, start);
+        }
+    }
+
+    /**
+     * Returns the max count of notification keys which are sent to the system in one call
+     */
+    int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Emits every batch which was sent to the system
+     */
+    @NonNull
+    Flowable<CommandBatch> observeBatches() {
+        return batchesSubject;
+    }
+
+    private void publish(@CommandBatch.CommandType int commandType, int size, long start) {
+        if (batchesSubject.hasSubscribers()) {
+            batchesSubject.onNext(new CommandBatch(
+                    commandType, size, SystemClock.elapsedRealtimeNanos() - start));
+        }
+    }
+
+    private static Map<String, StatusBarNotification> dedupe(Collection<StatusBarNotification> sbns) {
+        Map<String, StatusBarNotification> notifications = new LinkedHashMap<>();
+        for (StatusBarNotification sbn : sbns) {
+            notifications.put(Util.getKey(sbn), sbn);
+        }
+        return notifications;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import static com.ivianuu.rxnotifications.CommandPriority.PRIORITY_BACKGROUND;
+import static com.ivianuu.rxnotifications.CommandPriority.PRIORITY_USER;
+
+/**
+ * Priority lanes of notification commands
+ * User commands are always sent before background commands
+ */
+@IntDef(value = {PRIORITY_USER, PRIORITY_BACKGROUND})
+@Retention(RetentionPolicy.SOURCE)
+public @interface CommandPriority {
+    int PRIORITY_USER = 0;
+    int PRIORITY_BACKGROUND = 1;
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.reactivex.Completable;
+import io.reactivex.CompletableEmitter;
+import io.reactivex.functions.Action;
+
+import static com.ivianuu.rxnotifications.CommandPriority.PRIORITY_BACKGROUND;
+
+/**
+ * Executes notification commands serially on a single thread
+ *
+ * Pending commands are coalesced: interruption filter and listener hint requests are last write wins,
+ * cancels of the same lane are merged and a cancel removes the key from pending snooze and shown commands.
+ * Background commands are sent in chunks of the batch size and the user lane is checked between the chunks.
+ */
+final class CommandQueue {
+
+    private static final int TYPE_ACTION = 0;
+    private static final int TYPE_CANCEL = 1;
+    private static final int TYPE_CANCEL_ALL = 2;
+    private static final int TYPE_SNOOZE = 3;
+    private static final int TYPE_SET_SHOWN = 4;
+    private static final int TYPE_INTERRUPTION_FILTER = 5;
+    private static final int TYPE_LISTENER_HINTS = 6;
+
+    private final RxNotificationListenerService service;
+    private final CommandBatcher commandBatcher;
+    private final PackageStatsAggregator packageStats;
+
+    private final ArrayDeque<Command> userLane = new ArrayDeque<>();
+    private final ArrayDeque<Command> backgroundLane = new ArrayDeque<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "RxNotifications-commands"));
+
+    CommandQueue(@NonNull RxNotificationListenerService service,
+                 @NonNull CommandBatcher commandBatcher,
+                 @NonNull PackageStatsAggregator packageStats) {
+        this.service = service;
+        this.commandBatcher = commandBatcher;
+        this.packageStats = packageStats;
+    }
+
+    @NonNull
+    Completable cancel(@NonNull Collection<StatusBarNotification> sbns, @CommandPriority int priority) {
+        return Completable.create(e -> {
+            synchronized (this) {
+                Command command = find(lane(priority), TYPE_CANCEL, 0);
+                if (command == null) {
+                    command = new Command(TYPE_CANCEL);
+                    lane(priority).add(command);
+                }
+                command.add(sbns);
+                command.emitters.add(e);
+
+                // cancelling wins over snoozing or marking as shown
+                supersede(userLane, command);
+                supersede(backgroundLane, command);
+            }
+            executor.execute(this::executeNext);
+        });
+    }
+
+    @NonNull
+    Completable cancelAll() {
+        return Completable.create(e -> {
+            synchronized (this) {
+                Command command = new Command(TYPE_CANCEL_ALL);
+                command.emitters.add(e);
+                userLane.add(command);
+            }
+            executor.execute(this::executeNext);
+        });
+    }
+
+    @NonNull
+    Completable snooze(@NonNull Collection<StatusBarNotification> sbns,
+                       long duration,
+                       @CommandPriority int priority) {
+        return Completable.create(e -> {
+            synchronized (this) {
+                Command command = find(lane(priority), TYPE_SNOOZE, duration);
+                if (command == null) {
+                    command = new Command(TYPE_SNOOZE);
+                    command.value = duration;
+                    lane(priority).add(command);
+                }
+                command.add(sbns);
+                command.emitters.add(e);
+                supersedeByPendingCancels();
+            }
+            executor.execute(this::executeNext);
+        });
+    }
+
+    @NonNull
+    Completable setShown(@NonNull Collection<StatusBarNotification> sbns, @CommandPriority int priority) {
+        return Completable.create(e -> {
+            synchronized (this) {
+                Command command = find(lane(priority), TYPE_SET_SHOWN, 0);
+                if (command == null) {
+                    command = new Command(TYPE_SET_SHOWN);
+                    lane(priority).add(command);
+                }
+                command.add(sbns);
+                command.emitters.add(e);
+                supersedeByPendingCancels();
+            }
+            executor.execute(this::executeNext);
+        });
+    }
+
+    @NonNull
+    Completable requestInterruptionFilter(int interruptionFilter) {
+        return replace(TYPE_INTERRUPTION_FILTER, interruptionFilter);
+    }
+
+    @NonNull
+    Completable requestListenerHints(int hints) {
+        return replace(TYPE_LISTENER_HINTS, hints);
+    }
+
+    @NonNull
+    Completable action(@NonNull Action action) {
+        return Completable.create(e -> {
+            synchronized (this) {
+                Command command = new Command(TYPE_ACTION);
+                command.action = action;
+                command.emitters.add(e);
+                userLane.add(command);
+            }
+            executor.execute(this::executeNext);
+        });
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private Completable replace(int type, int value) {
+        return Completable.create(e -> {
+            synchronized (this) {
+                // only the last requested value matters
+                Command command = find(userLane, type, -1);
+                if (command == null) {
+                    command = new Command(type);
+                    userLane.add(command);
+                }
+                command.value = value;
+                command.emitters.add(e);
+            }
+            executor.execute(this::executeNext);
+        });
+    }
+
+    private void executeNext() {
+        Command command;
+        List<StatusBarNotification> chunk = null;
+        synchronized (this) {
+            command = userLane.poll();
+            boolean background = false;
+            if (command == null) {
+                command = backgroundLane.poll();
+                background = true;
+            }
+
+            if (command == null || command.isDisposed()) {
+                // coalesced into another command or nobody is interested anymore
+                return;
+            }
+
+            if (background && command.isKeyed()
+                    && command.notifications.size() > commandBatcher.getBatchSize()) {
+                // bulk work is sent one chunk at a time so user commands can overtake the rest
+                chunk = command.takeChunk(commandBatcher.getBatchSize());
+                backgroundLane.addFirst(command);
+            }
+        }
+
+        if (chunk != null) {
+            try {
+                execute(command, chunk);
+            } catch (Throwable t) {
+                synchronized (this) {
+                    backgroundLane.remove(command);
+                }
+                for (CompletableEmitter emitter : command.emitters) {
+                    emitter.tryOnError(t);
+                }
+                return;
+            }
+            executor.execute(this::executeNext);
+            return;
+        }
+
+        try {
+            execute(command, command.notifications.values());
+        } catch (Throwable t) {
+            for (CompletableEmitter emitter : command.emitters) {
+                emitter.tryOnError(t);
+            }
+            return;
+        }
+
+        for (CompletableEmitter emitter : command.emitters) {
+            emitter.onComplete();
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private void execute(Command command, Collection<StatusBarNotification> notifications) throws Exception {
+        switch (command.type) {
+            case TYPE_ACTION:
+                command.action.run();
+                break;
+            case TYPE_CANCEL:
+                for (StatusBarNotification sbn : commandBatcher.cancel(notifications)) {
+                    packageStats.onCancelled(sbn.getPackageName());
+                }
+                break;
+            case TYPE_CANCEL_ALL:
+                // only the clearable notifications which are active right now get cancelled
+                StatusBarNotification[] activeNotifications = service.getMatchingActiveNotifications();
+                service.cancelAllNotifications();
+                if (activeNotifications != null) {
+                    for (StatusBarNotification sbn : activeNotifications) {
+                        if (sbn.isClearable()) {
+                            packageStats.onCancelled(sbn.getPackageName());
+                        }
+                    }
+                }
+                break;
+            case TYPE_SNOOZE:
+                commandBatcher.snooze(notifications, command.value);
+                break;
+            case TYPE_SET_SHOWN:
+                commandBatcher.setShown(notifications);
+                break;
+            case TYPE_INTERRUPTION_FILTER:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    service.requestInterruptionFilter((int) command.value);
+                }
+                break;
+            case TYPE_LISTENER_HINTS:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    service.requestListenerHints((int) command.value);
+                }
+                break;
+        }
+    }
+
+    private void supersedeByPendingCancels() {
+        List<Command> cancels = new ArrayList<>();
+        for (Command command : userLane) {
+            if (command.type == TYPE_CANCEL) {
+                cancels.add(command);
+            }
+        }
+        for (Command command : backgroundLane) {
+            if (command.type == TYPE_CANCEL) {
+                cancels.add(command);
+            }
+        }
+
+        for (Command cancel : cancels) {
+            supersede(userLane, cancel);
+            supersede(backgroundLane, cancel);
+        }
+    }
+
+    private static void supersede(ArrayDeque<Command> lane, Command cancel) {
+        Iterator<Command> iterator = lane.iterator();
+        while (iterator.hasNext()) {
+            Command command = iterator.next();
+            if (command.type != TYPE_SNOOZE && command.type != TYPE_SET_SHOWN) {
+                continue;
+            }
+
+            command.notifications.keySet().removeAll(cancel.notifications.keySet());
+
+            if (command.notifications.isEmpty()) {
+                // the waiting callers complete together with the cancel
+                iterator.remove();
+                cancel.emitters.addAll(command.emitters);
+            }
+        }
+    }
+
+    private ArrayDeque<Command> lane(@CommandPriority int priority) {
+        return priority == PRIORITY_BACKGROUND ? backgroundLane : userLane;
+    }
+
+    @Nullable
+    private static Command find(ArrayDeque<Command> lane, int type, long value) {
+        for (Command command : lane) {
+            if (command.type == type && (value == -1 || command.value == value)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    private static final class Command {
+
+        private final int type;
+        private final Map<String, StatusBarNotification> notifications = new LinkedHashMap<>();
+        private final List<CompletableEmitter> emitters = new ArrayList<>();
+        private long value;
+        private Action action;
+
+        private Command(int type) {
+            this.type = type;
+        }
+
+        private void add(Collection<StatusBarNotification> sbns) {
+            for (StatusBarNotification sbn : sbns) {
+                notifications.put(Util.getKey(sbn), sbn);
+            }
+        }
+
+        private boolean isKeyed() {
+            return type == TYPE_CANCEL || type == TYPE_SNOOZE || type == TYPE_SET_SHOWN;
+        }
+
+        private List<StatusBarNotification> takeChunk(int size) {
+            List<StatusBarNotification> chunk = new ArrayList<>(size);
+            Iterator<StatusBarNotification> iterator = notifications.values().iterator();
+            while (chunk.size() < size && iterator.hasNext()) {
+                chunk.add(iterator.next());
+                iterator.remove();
+            }
+            return chunk;
+        }
+
+        private boolean isDisposed() {
+            for (CompletableEmitter emitter : emitters) {
+                if (!emitter.isDisposed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
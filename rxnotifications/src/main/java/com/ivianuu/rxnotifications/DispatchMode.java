@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+
+import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
+
+/**
+ * Describes on which thread the listener callbacks are delivered to the subscribers
+ */
+public final class DispatchMode {
+
+    private static final DispatchMode IMMEDIATE = new DispatchMode(false, null);
+    private static final DispatchMode HANDLER_THREAD = new DispatchMode(true, null);
+
+    private final boolean handlerThread;
+    private final Scheduler scheduler;
+
+    private DispatchMode(boolean handlerThread, @Nullable Scheduler scheduler) {
+        this.handlerThread = handlerThread;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Delivers the callbacks directly on the main thread of the service
+     */
+    @NonNull
+    public static DispatchMode immediate() {
+        return IMMEDIATE;
+    }
+
+    /**
+     * Delivers the callbacks on a dedicated handler thread
+     */
+    @NonNull
+    public static DispatchMode handlerThread() {
+        return HANDLER_THREAD;
+    }
+
+    /**
+     * Delivers the callbacks on a single worker of the scheduler
+     */
+    @NonNull
+    public static DispatchMode scheduler(@NonNull Scheduler scheduler) {
+        checkNotNull(scheduler, "scheduler == null");
+        return new DispatchMode(false, scheduler);
+    }
+
+    @NonNull
+    Dispatcher createDispatcher() {
+        if (scheduler != null) {
+            return new WorkerDispatcher(scheduler.createWorker());
+        } else if (handlerThread) {
+            HandlerThread thread = new HandlerThread("RxNotifications", Process.THREAD_PRIORITY_FOREGROUND);
+            thread.start();
+            return new HandlerDispatcher(thread);
+        } else {
+            return new ImmediateDispatcher();
+        }
+    }
+
+    private static final class ImmediateDispatcher implements Dispatcher {
+
+        // the service callbacks arrive on the main thread
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void schedule(@NonNull Runnable runnable, long delayMillis) {
+            handler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void shutdown() {
+            handler.removeCallbacksAndMessages(null);
+        }
+    }
+
+    private static final class HandlerDispatcher implements Dispatcher {
+
+        private final HandlerThread thread;
+        private final Handler handler;
+
+        private HandlerDispatcher(HandlerThread thread) {
+            this.thread = thread;
+            this.handler = new Handler(thread.getLooper());
+        }
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            handler.post(runnable);
+        }
+
+        @Override
+        public void schedule(@NonNull Runnable runnable, long delayMillis) {
+            handler.postDelayed(runnable, delayMillis);
+        }
+
+        @Override
+        public void shutdown() {
+            thread.quitSafely();
+        }
+    }
+
+    private static final class WorkerDispatcher implements Dispatcher {
+
+        private final Scheduler.Worker worker;
+
+        private WorkerDispatcher(Scheduler.Worker worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            worker.schedule(runnable);
+        }
+
+        @Override
+        public void schedule(@NonNull Runnable runnable, long delayMillis) {
+            worker.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            worker.dispose();
+        }
+    }
+}
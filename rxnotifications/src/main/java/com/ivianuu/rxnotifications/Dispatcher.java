@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Runs listener work serially in the order it was submitted
+ */
+interface Dispatcher {
+
+    /**
+     * Runs the runnable after all previously submitted ones
+     */
+    void execute(@NonNull Runnable runnable);
+
+    /**
+     * Runs the runnable after the delay on the same thread as executed runnables
+     */
+    void schedule(@NonNull Runnable runnable, long delayMillis);
+
+    /**
+     * Releases the resources of this dispatcher
+     */
+    void shutdown();
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.app.NotificationChannel;
+import android.app.NotificationChannelGroup;
+import android.os.UserHandle;
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Hands the service callbacks over to a dispatcher
+ */
+final class DispatchingServiceCallbacks implements RxNotificationListenerService.ServiceCallbacks {
+
+    private final Dispatcher dispatcher;
+    private final RxNotificationListenerService.ServiceCallbacks callbacks;
+
+    DispatchingServiceCallbacks(@NonNull Dispatcher dispatcher,
+                                @NonNull RxNotificationListenerService.ServiceCallbacks callbacks) {
+        this.dispatcher = dispatcher;
+        this.callbacks = callbacks;
+    }
+
+    @Override
+    public void onNotificationPosted(@NonNull StatusBarNotification sbn,
+                                     @Nullable NotificationListenerService.RankingMap rankingMap,
+                                     long receivedNanos) {
+        dispatcher.execute(() -> callbacks.onNotificationPosted(sbn, rankingMap, receivedNanos));
+    }
+
+    @Override
+    public void onNotificationRemoved(@NonNull StatusBarNotification sbn,
+                                      @Nullable NotificationListenerService.RankingMap rankingMap,
+                                      long receivedNanos) {
+        dispatcher.execute(() -> callbacks.onNotificationRemoved(sbn, rankingMap, receivedNanos));
+    }
+
+    @Override
+    public void onListenerConnectionChanged(boolean connected) {
+        dispatcher.execute(() -> callbacks.onListenerConnectionChanged(connected));
+    }
+
+    @Override
+    public void onNotificationChannelModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannel channel, int modificationType, long receivedNanos) {
+        dispatcher.execute(() -> callbacks.onNotificationChannelModified(pkg, user, channel, modificationType, receivedNanos));
+    }
+
+    @Override
+    public void onNotificationChannelGroupModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannelGroup group, int modificationType, long receivedNanos) {
+        dispatcher.execute(() -> callbacks.onNotificationChannelGroupModified(pkg, user, group, modificationType, receivedNanos));
+    }
+
+    @Override
+    public void onNotificationRankingUpdate(@NonNull NotificationListenerService.RankingMap rankingMap) {
+        dispatcher.execute(() -> callbacks.onNotificationRankingUpdate(rankingMap));
+    }
+
+    @Override
+    public void onInterruptionFilterChanged(int interruptionFilter) {
+        dispatcher.execute(() -> callbacks.onInterruptionFilterChanged(interruptionFilter));
+    }
+
+    @Override
+    public void onListenerHintsChanged(int hints) {
+        dispatcher.execute(() -> callbacks.onListenerHintsChanged(hints));
+    }
+}
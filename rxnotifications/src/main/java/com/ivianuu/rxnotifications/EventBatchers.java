@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+
+/**
+ * Collects events into batches bounded by a time window and a max size
+ *
+ * Subscribers with the same window and max size share one buffer and one timer.
+ * Events are added and batches are flushed on the dispatcher thread.
+ */
+final class EventBatchers<T> {
+
+    // the max size can be huge so batches grow on demand
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Dispatcher dispatcher;
+    private final List<Batcher> batchers = new CopyOnWriteArrayList<>();
+
+    EventBatchers(@NonNull Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Adds the event to all active batches
+     */
+    void add(@NonNull T event) {
+        for (Batcher batcher : batchers) {
+            batcher.add(event);
+        }
+    }
+
+    @NonNull
+    Flowable<List<T>> observe(long windowMillis, int maxSize) {
+        return Flowable.defer(() -> {
+            Batcher batcher;
+            synchronized (batchers) {
+                batcher = find(windowMillis, maxSize);
+                if (batcher == null) {
+                    batcher = new Batcher(windowMillis, maxSize);
+                    batchers.add(batcher);
+                }
+                batcher.subscribers++;
+            }
+
+            final Batcher subscribedBatcher = batcher;
+            return batcher.batches
+                    .doFinally(() -> {
+                        synchronized (batchers) {
+                            if (--subscribedBatcher.subscribers == 0) {
+                                batchers.remove(subscribedBatcher);
+                            }
+                        }
+                    });
+        });
+    }
+
+    private Batcher find(long windowMillis, int maxSize) {
+        for (Batcher batcher : batchers) {
+            if (batcher.windowMillis == windowMillis && batcher.maxSize == maxSize) {
+                return batcher;
+            }
+        }
+        return null;
+    }
+
+    private final class Batcher {
+
+        private final long windowMillis;
+        private final int maxSize;
+        private final PublishProcessor<List<T>> batches = PublishProcessor.create();
+
+        private List<T> buffer;
+        private boolean scheduled;
+        // incremented by every flush so the timer of an already flushed batch is ignored
+        private long generation;
+        private int subscribers;
+
+        private Batcher(long windowMillis, int maxSize) {
+            this.windowMillis = windowMillis;
+            this.maxSize = maxSize;
+            this.buffer = new ArrayList<>(Math.min(maxSize, INITIAL_CAPACITY));
+        }
+
+        private void add(T event) {
+            buffer.add(event);
+            if (buffer.size() >= maxSize) {
+                flush();
+            } else if (!scheduled) {
+                scheduled = true;
+                long batchGeneration = generation;
+                dispatcher.schedule(() -> onTimeout(batchGeneration), windowMillis);
+            }
+        }
+
+        private void onTimeout(long batchGeneration) {
+            if (batchGeneration == generation) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            scheduled = false;
+            generation++;
+            if (buffer.isEmpty()) {
+                return;
+            }
+
+            List<T> batch = Collections.unmodifiableList(buffer);
+            buffer = new ArrayList<>(Math.min(maxSize, INITIAL_CAPACITY));
+            batches.onNext(batch);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.os.SystemClock;
+import android.support.annotation.CheckResult;
+import android.support.annotation.NonNull;
+
+import io.reactivex.FlowableTransformer;
+
+import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
+
+/**
+ * Measures the time between receiving an event and its delivery at some point of a stream
+ */
+public final class EventLatency {
+
+    private EventLatency() {
+        // no instances
+    }
+
+    /**
+     * Listener of measured latencies
+     */
+    public interface Listener {
+
+        /**
+         * Called with the latency of the event which is about to be delivered
+         */
+        void onLatency(@NonNull SequencedEvent event, long latencyNanos);
+    }
+
+    /**
+     * Returns a transformer which reports the latency of every event at the point it is composed into
+     */
+    @CheckResult @NonNull
+    public static <T extends SequencedEvent> FlowableTransformer<T, T> measure(@NonNull Listener listener) {
+        checkNotNull(listener, "listener == null");
+        return upstream -> upstream.doOnNext(event -> listener.onLatency(
+                event, SystemClock.elapsedRealtimeNanos() - event.getTimestampNanos()));
+    }
+}
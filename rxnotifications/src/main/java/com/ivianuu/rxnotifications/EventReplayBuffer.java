@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed capacity ring of recent events which is bounded by count and age
+ *
+ * The slots are allocated once, adding an event only overwrites the oldest slot.
+ */
+final class EventReplayBuffer<T extends SequencedEvent> {
+
+    private final Object[] events;
+    private final long[] sequences;
+    private final long[] times;
+    private final long maxAgeNanos;
+
+    private int head;
+    private int size;
+    // the greatest sequence which was added but is no longer buffered
+    private long evictedSequence;
+
+    /**
+     * Constructs a new buffer which keeps events forever if max age is 0
+     */
+    EventReplayBuffer(int capacity, long maxAgeNanos) {
+        this.events = new Object[capacity];
+        this.sequences = new long[capacity];
+        this.times = new long[capacity];
+        this.maxAgeNanos = maxAgeNanos;
+    }
+
+    /**
+     * Adds the event and overwrites the oldest one if the buffer is full
+     * Must be called for every event even if the capacity is 0 so replays of evicted events fail
+     */
+    synchronized void add(@NonNull T event) {
+        if (events.length == 0) {
+            evictedSequence = event.getSequence();
+            return;
+        }
+
+        int index = (head + size) % events.length;
+        if (size == events.length) {
+            evictedSequence = sequences[head];
+        }
+        events[index] = event;
+        sequences[index] = event.getSequence();
+        times[index] = event.getTimestampNanos();
+        if (size < events.length) {
+            size++;
+        } else {
+            head = (head + 1) % events.length;
+        }
+    }
+
+    /**
+     * Returns whether events with a sequence greater than the provided one were evicted already
+     */
+    synchronized boolean isTruncated(long sequence, long nowNanos) {
+        evictExpired(nowNanos);
+        return sequence < evictedSequence;
+    }
+
+    /**
+     * Returns the sequence of the oldest buffered event or 0 if the buffer is empty
+     */
+    synchronized long getOldestSequence() {
+        return size > 0 ? sequences[head] : 0;
+    }
+
+    /**
+     * Returns the buffered events with a sequence greater than the provided one in order
+     */
+    @SuppressWarnings("unchecked")
+    @NonNull
+    synchronized List<T> since(long sequence, long nowNanos) {
+        evictExpired(nowNanos);
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+
+        List<T> replay = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % events.length;
+            if (sequences[index] > sequence) {
+                replay.add((T) events[index]);
+            }
+        }
+        return replay;
+    }
+
+    private void evictExpired(long nowNanos) {
+        if (maxAgeNanos == 0) {
+            return;
+        }
+        while (size > 0 && nowNanos - times[head] > maxAgeNanos) {
+            evictedSequence = sequences[head];
+            events[head] = null;
+            head = (head + 1) % events.length;
+            size--;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.app.Notification;
+import android.os.Build;
+import android.service.notification.NotificationListenerService;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static com.ivianuu.rxnotifications.NotificationFilter.NO_MIN_IMPORTANCE;
+
+/**
+ * The registered notification filters compiled into flat arrays
+ *
+ * A notification passes if it matches any filter, it's checked against the cheap conditions
+ * first and the importance is only looked up if a filter requires it.
+ */
+final class FilterPredicate {
+
+    static final FilterPredicate ACCEPT_ALL = compile(Collections.emptyList());
+
+    private final int count;
+    private final Set<?>[] allowedPackages;
+    private final Set<?>[] deniedPackages;
+    private final Set<?>[] channelIds;
+    private final int[] requiredFlags;
+    private final int[] excludedFlags;
+    private final int[] minImportances;
+
+    private FilterPredicate(int count) {
+        this.count = count;
+        this.allowedPackages = new Set<?>[count];
+        this.deniedPackages = new Set<?>[count];
+        this.channelIds = new Set<?>[count];
+        this.requiredFlags = new int[count];
+        this.excludedFlags = new int[count];
+        this.minImportances = new int[count];
+    }
+
+    /**
+     * Compiles the filters into a predicate, no filters accept all notifications
+     */
+    @NonNull
+    static FilterPredicate compile(@NonNull List<NotificationFilter> filters) {
+        FilterPredicate predicate = new FilterPredicate(filters.size());
+        for (int i = 0; i < filters.size(); i++) {
+            NotificationFilter filter = filters.get(i);
+            // empty sets don't restrict anything so skip them entirely
+            predicate.allowedPackages[i] = filter.getAllowedPackages().isEmpty() ? null : filter.getAllowedPackages();
+            predicate.deniedPackages[i] = filter.getDeniedPackages().isEmpty() ? null : filter.getDeniedPackages();
+            predicate.channelIds[i] = filter.getChannelIds().isEmpty() ? null : filter.getChannelIds();
+            predicate.requiredFlags[i] = filter.getRequiredFlags();
+            predicate.excludedFlags[i] = filter.getExcludedFlags();
+            predicate.minImportances[i] = filter.getMinImportance();
+        }
+        return predicate;
+    }
+
+    /**
+     * Returns whether every notification passes
+     */
+    boolean acceptsAll() {
+        return count == 0;
+    }
+
+    /**
+     * Returns whether the notification matches any filter
+     * The importance is read from the ranking map into the ranking if available
+     */
+    boolean test(@NonNull StatusBarNotification sbn,
+                 @Nullable NotificationListenerService.RankingMap rankingMap,
+                 @Nullable NotificationListenerService.Ranking ranking) {
+        if (count == 0) {
+            return true;
+        }
+
+        String packageName = sbn.getPackageName();
+        Notification notification = sbn.getNotification();
+        int flags = notification.flags;
+        String channelId = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            channelId = notification.getChannelId();
+        }
+        int importance = NO_MIN_IMPORTANCE;
+        boolean importanceLoaded = false;
+
+        for (int i = 0; i < count; i++) {
+            if (allowedPackages[i] != null && !allowedPackages[i].contains(packageName)) {
+                continue;
+            }
+            if (deniedPackages[i] != null && deniedPackages[i].contains(packageName)) {
+                continue;
+            }
+            if ((flags & requiredFlags[i]) != requiredFlags[i] || (flags & excludedFlags[i]) != 0) {
+                continue;
+            }
+            if (channelIds[i] != null && (channelId == null || !channelIds[i].contains(channelId))) {
+                continue;
+            }
+
+            if (minImportances[i] != NO_MIN_IMPORTANCE) {
+                if (!importanceLoaded) {
+                    importance = getImportance(sbn, rankingMap, ranking);
+                    importanceLoaded = true;
+                }
+                // without a ranking the importance is unknown so don't drop anything
+                if (importance != NO_MIN_IMPORTANCE && importance < minImportances[i]) {
+                    continue;
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private static int getImportance(StatusBarNotification sbn,
+                                     NotificationListenerService.RankingMap rankingMap,
+                                     NotificationListenerService.Ranking ranking) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && rankingMap != null && ranking != null
+                && rankingMap.getRanking(Util.getKey(sbn), ranking)) {
+            return ranking.getImportance();
+        }
+        return NO_MIN_IMPORTANCE;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+/**
+ * Counters of the notification events which were checked against the registered filters
+ */
+public final class FilterStats {
+
+    private final long matched;
+    private final long rejected;
+
+    FilterStats(long matched, long rejected) {
+        this.matched = matched;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Returns the count of events which matched a filter and were delivered
+     */
+    public long getMatched() {
+        return matched;
+    }
+
+    /**
+     * Returns the count of events which were dropped before they reached the listener
+     */
+    public long getRejected() {
+        return rejected;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.reactivex.Flowable;
+import io.reactivex.internal.subscriptions.SubscriptionHelper;
+import io.reactivex.internal.util.BackpressureHelper;
+
+/**
+ * Buffers events in a lock free ring per subscriber and overwrites the oldest ones if the ring is full
+ */
+final class FlowableOnBackpressureDropOldest<T> extends Flowable<T> {
+
+    private final Publisher<T> upstream;
+    private final int capacity;
+    private final AtomicLong droppedEvents;
+
+    FlowableOnBackpressureDropOldest(@NonNull Publisher<T> upstream,
+                                     int capacity,
+                                     @NonNull AtomicLong droppedEvents) {
+        this.upstream = upstream;
+        this.capacity = capacity;
+        this.droppedEvents = droppedEvents;
+    }
+
+    @Override
+    protected void subscribeActual(Subscriber<? super T> s) {
+        upstream.subscribe(new DropOldestSubscriber<>(s, capacity, droppedEvents));
+    }
+
+    private static final class DropOldestSubscriber<T> extends AtomicInteger
+            implements Subscriber<T>, Subscription {
+
+        private static final long serialVersionUID = -3468276391420582318L;
+
+        private final Subscriber<? super T> downstream;
+        private final int capacity;
+        private final AtomicLong droppedEvents;
+
+        // the producer marks a slot with -1 while writing it and publishes
+        // the index afterwards, the consumer detects overwritten slots by the index
+        private final AtomicReferenceArray<T> values;
+        private final AtomicLongArray indices;
+        private final AtomicLong producerIndex = new AtomicLong();
+        private long consumerIndex;
+
+        private final AtomicLong requested = new AtomicLong();
+
+        private Subscription subscription;
+
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private Throwable error;
+
+        private DropOldestSubscriber(Subscriber<? super T> downstream,
+                                     int capacity,
+                                     AtomicLong droppedEvents) {
+            this.downstream = downstream;
+            this.capacity = capacity;
+            this.droppedEvents = droppedEvents;
+            this.values = new AtomicReferenceArray<>(capacity);
+            this.indices = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                indices.set(i, -1);
+            }
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+            downstream.onSubscribe(this);
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(T t) {
+            long index = producerIndex.get();
+            int offset = (int) (index % capacity);
+            indices.set(offset, -1);
+            values.set(offset, t);
+            indices.set(offset, index);
+            producerIndex.set(index + 1);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (SubscriptionHelper.validate(n)) {
+                BackpressureHelper.add(requested, n);
+                drain();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                subscription.cancel();
+            }
+        }
+
+        private T poll() {
+            for (;;) {
+                long producer = producerIndex.get();
+                long consumer = consumerIndex;
+                if (consumer == producer) {
+                    return null;
+                }
+
+                if (producer - consumer > capacity) {
+                    droppedEvents.addAndGet(producer - capacity - consumer);
+                    consumer = producer - capacity;
+                }
+
+                int offset = (int) (consumer % capacity);
+                T value = values.get(offset);
+                if (indices.get(offset) != consumer) {
+                    // the producer already overwrote this slot
+                    droppedEvents.incrementAndGet();
+                    consumerIndex = consumer + 1;
+                    continue;
+                }
+
+                consumerIndex = consumer + 1;
+                // release the reference unless the producer reused the slot in the meantime
+                values.compareAndSet(offset, value, null);
+                return value;
+            }
+        }
+
+        private void drain() {
+            if (getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            for (;;) {
+                long r = requested.get();
+                long emitted = 0;
+
+                while (emitted != r) {
+                    if (cancelled) {
+                        return;
+                    }
+
+                    boolean d = done;
+                    T value = poll();
+                    if (value == null) {
+                        if (d) {
+                            terminate();
+                            return;
+                        }
+                        break;
+                    }
+
+                    downstream.onNext(value);
+                    emitted++;
+                }
+
+                if (emitted == r) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (done && producerIndex.get() == consumerIndex) {
+                        terminate();
+                        return;
+                    }
+                }
+
+                if (emitted != 0 && r != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+
+                missed = addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+            }
+        }
+
+        private void terminate() {
+            Throwable e = error;
+            if (e != null) {
+                downstream.onError(e);
+            } else {
+                downstream.onComplete();
+            }
+        }
+    }
+}
@@ -19,9 +19,18 @@ package com.ivianuu.rxnotifications;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.List;
+
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.BIG_TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.MESSAGES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.SUB_TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT_LINES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TITLE;
 
 import static com.ivianuu.rxnotifications.NotificationEvent.NotificationEventType.NOTIFICATION_POSTED;
 import static com.ivianuu.rxnotifications.NotificationEvent.NotificationEventType.NOTIFICATION_REMOVED;
@@ -29,7 +38,7 @@ import static com.ivianuu.rxnotifications.NotificationEvent.NotificationEventTyp
 /**
  * Represents a notification event
  */
-public final class NotificationEvent {
+public final class NotificationEvent implements SequencedEvent {
 
     @IntDef(value = {NOTIFICATION_POSTED, NOTIFICATION_REMOVED})
     @Retention(RetentionPolicy.SOURCE)
@@ -38,8 +47,24 @@ public final class NotificationEvent {
         int NOTIFICATION_REMOVED = 2;
     }
 
+    @IntDef(flag = true, value = {TITLE, TEXT, SUB_TEXT, BIG_TEXT, TEXT_LINES, MESSAGES})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ExtrasField {
+        int TITLE = 1;
+        int TEXT = 1 << 1;
+        int SUB_TEXT = 1 << 2;
+        int BIG_TEXT = 1 << 3;
+        int TEXT_LINES = 1 << 4;
+        int MESSAGES = 1 << 5;
+    }
+
     private StatusBarNotification statusBarNotification;
     private int eventType;
+    private final NotificationExtras extras;
+    private long sequence;
+    private long streamSequence;
+    private long timestampNanos;
+    private boolean reconciled;
 
     /**
      * Constructs a new notification event
@@ -48,6 +73,28 @@ public final class NotificationEvent {
                              @NotificationEventType int eventType) {
         this.statusBarNotification = statusBarNotification;
         this.eventType = eventType;
+        this.extras = new NotificationExtras(statusBarNotification);
+    }
+
+    void stamp(long sequence, long streamSequence, long timestampNanos) {
+        this.sequence = sequence;
+        this.streamSequence = streamSequence;
+        this.timestampNanos = timestampNanos;
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public long getStreamSequence() {
+        return streamSequence;
+    }
+
+    @Override
+    public long getTimestampNanos() {
+        return timestampNanos;
     }
 
     /**
@@ -66,4 +113,74 @@ public final class NotificationEvent {
         return eventType;
     }
 
+    /**
+     * Returns whether this event was synthesized after the listener reconnected
+     * Such events describe changes which happened while the listener was disconnected
+     */
+    public boolean isReconciled() {
+        return reconciled;
+    }
+
+    void setReconciled(boolean reconciled) {
+        this.reconciled = reconciled;
+    }
+
+    /**
+     * Decodes only the provided extras fields at once
+     * Every field is decoded at most once per event and shared by all subscribers
+     */
+    @NonNull
+    public NotificationEvent decodeExtras(@ExtrasField int fields) {
+        extras.decode(fields);
+        return this;
+    }
+
+    /**
+     * Returns the title of the notification
+     */
+    @Nullable
+    public CharSequence getTitle() {
+        return extras.getTitle();
+    }
+
+    /**
+     * Returns the text of the notification
+     */
+    @Nullable
+    public CharSequence getText() {
+        return extras.getText();
+    }
+
+    /**
+     * Returns the sub text of the notification
+     */
+    @Nullable
+    public CharSequence getSubText() {
+        return extras.getSubText();
+    }
+
+    /**
+     * Returns the big text of the notification
+     */
+    @Nullable
+    public CharSequence getBigText() {
+        return extras.getBigText();
+    }
+
+    /**
+     * Returns the text lines of an inbox style notification
+     */
+    @NonNull
+    public List<CharSequence> getTextLines() {
+        return extras.getTextLines();
+    }
+
+    /**
+     * Returns the message texts of a messaging style notification
+     */
+    @NonNull
+    public List<CharSequence> getMessages() {
+        return extras.getMessages();
+    }
+
 }
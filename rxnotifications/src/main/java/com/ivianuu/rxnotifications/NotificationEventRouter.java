@@ -0,0 +1,143 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+
+/**
+ * Routes notification events only to the subscribers of the matching key, package or channel
+ */
+final class NotificationEventRouter {
+
+    private final Map<String, Route> keyRoutes = new ConcurrentHashMap<>();
+    private final Map<String, Route> packageRoutes = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Route>> channelRoutes = new ConcurrentHashMap<>();
+
+    private final Object lock = new Object();
+
+    /**
+     * Delivers the event to the interested subscribers
+     */
+    void dispatch(@NonNull NotificationEvent event) {
+        StatusBarNotification sbn = event.getStatusBarNotification();
+
+        if (!keyRoutes.isEmpty()) {
+            emit(keyRoutes.get(Util.getKey(sbn)), event);
+        }
+
+        if (!packageRoutes.isEmpty()) {
+            emit(packageRoutes.get(sbn.getPackageName()), event);
+        }
+
+        if (!channelRoutes.isEmpty() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            Map<String, Route> routes = channelRoutes.get(sbn.getPackageName());
+            String channelId = sbn.getNotification().getChannelId();
+            if (routes != null && channelId != null) {
+                emit(routes.get(channelId), event);
+            }
+        }
+    }
+
+    @NonNull
+    Flowable<NotificationEvent> observeKey(@NonNull String key) {
+        return observe(keyRoutes, key);
+    }
+
+    @NonNull
+    Flowable<NotificationEvent> observePackage(@NonNull String pkg) {
+        return observe(packageRoutes, pkg);
+    }
+
+    @NonNull
+    Flowable<NotificationEvent> observeChannel(@NonNull String pkg, @NonNull String channelId) {
+        return Flowable.defer(() -> {
+            Route route;
+            synchronized (lock) {
+                Map<String, Route> routes = channelRoutes.get(pkg);
+                if (routes == null) {
+                    routes = new ConcurrentHashMap<>();
+                    channelRoutes.put(pkg, routes);
+                }
+                route = acquire(routes, channelId);
+            }
+
+            return route.processor
+                    .doFinally(() -> {
+                        synchronized (lock) {
+                            Map<String, Route> routes = channelRoutes.get(pkg);
+                            release(routes, channelId);
+                            if (routes.isEmpty()) {
+                                channelRoutes.remove(pkg);
+                            }
+                        }
+                    });
+        });
+    }
+
+    private Flowable<NotificationEvent> observe(Map<String, Route> routes, String routeKey) {
+        return Flowable.defer(() -> {
+            Route route;
+            synchronized (lock) {
+                route = acquire(routes, routeKey);
+            }
+
+            return route.processor
+                    .doFinally(() -> {
+                        synchronized (lock) {
+                            release(routes, routeKey);
+                        }
+                    });
+        });
+    }
+
+    private static Route acquire(Map<String, Route> routes, String routeKey) {
+        Route route = routes.get(routeKey);
+        if (route == null) {
+            route = new Route();
+            routes.put(routeKey, route);
+        }
+        route.subscribers++;
+        return route;
+    }
+
+    private static void release(Map<String, Route> routes, String routeKey) {
+        Route route = routes.get(routeKey);
+        // release empty routes so they don't cost anything on dispatch
+        if (--route.subscribers == 0) {
+            routes.remove(routeKey);
+        }
+    }
+
+    private static void emit(Route route, NotificationEvent event) {
+        if (route != null) {
+            route.processor.onNext(event);
+        }
+    }
+
+    private static final class Route {
+        private final PublishProcessor<NotificationEvent> processor = PublishProcessor.create();
+        private int subscribers;
+    }
+}
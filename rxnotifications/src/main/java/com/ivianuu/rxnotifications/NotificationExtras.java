@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.app.Notification;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.BIG_TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.MESSAGES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.SUB_TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT_LINES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TITLE;
+
+/**
+ * Decodes the extras of a notification lazily and caches every decoded field
+ */
+final class NotificationExtras {
+
+    // mirrors Notification.MessagingStyle.Message
+    private static final String KEY_MESSAGE_TEXT = "text";
+
+    private final StatusBarNotification sbn;
+
+    private volatile int decodedFields;
+
+    private CharSequence title;
+    private CharSequence text;
+    private CharSequence subText;
+    private CharSequence bigText;
+    private List<CharSequence> textLines = Collections.emptyList();
+    private List<CharSequence> messages = Collections.emptyList();
+
+    NotificationExtras(@NonNull StatusBarNotification sbn) {
+        this.sbn = sbn;
+    }
+
+    @Nullable
+    CharSequence getTitle() {
+        decode(TITLE);
+        return title;
+    }
+
+    @Nullable
+    CharSequence getText() {
+        decode(TEXT);
+        return text;
+    }
+
+    @Nullable
+    CharSequence getSubText() {
+        decode(SUB_TEXT);
+        return subText;
+    }
+
+    @Nullable
+    CharSequence getBigText() {
+        decode(BIG_TEXT);
+        return bigText;
+    }
+
+    @NonNull
+    List<CharSequence> getTextLines() {
+        decode(TEXT_LINES);
+        return textLines;
+    }
+
+    @NonNull
+    List<CharSequence> getMessages() {
+        decode(MESSAGES);
+        return messages;
+    }
+
+    /**
+     * Decodes all requested fields which were not decoded yet with a single extras access
+     */
+    void decode(@NotificationEvent.ExtrasField int fields) {
+        if ((decodedFields & fields) == fields) {
+            return;
+        }
+
+        synchronized (this) {
+            int missing = fields & ~decodedFields;
+            if (missing == 0) {
+                return;
+            }
+
+            Bundle extras = null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                extras = sbn.getNotification().extras;
+            }
+
+            if (extras != null) {
+                if ((missing & TITLE) != 0) {
+                    title = extras.getCharSequence(Notification.EXTRA_TITLE);
+                }
+                if ((missing & TEXT) != 0) {
+                    text = extras.getCharSequence(Notification.EXTRA_TEXT);
+                }
+                if ((missing & SUB_TEXT) != 0) {
+                    subText = extras.getCharSequence(Notification.EXTRA_SUB_TEXT);
+                }
+                if ((missing & BIG_TEXT) != 0) {
+                    bigText = extras.getCharSequence(Notification.EXTRA_BIG_TEXT);
+                }
+                if ((missing & TEXT_LINES) != 0) {
+                    CharSequence[] lines = extras.getCharSequenceArray(Notification.EXTRA_TEXT_LINES);
+                    if (lines != null) {
+                        textLines = Collections.unmodifiableList(Arrays.asList(lines));
+                    }
+                }
+                if ((missing & MESSAGES) != 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    messages = decodeMessages(extras.getParcelableArray(Notification.EXTRA_MESSAGES));
+                }
+            }
+
+            decodedFields |= missing;
+        }
+    }
+
+    @NonNull
+    private static List<CharSequence> decodeMessages(@Nullable Parcelable[] bundles) {
+        if (bundles == null) {
+            return Collections.emptyList();
+        }
+
+        List<CharSequence> messages = new ArrayList<>(bundles.length);
+        for (Parcelable parcelable : bundles) {
+            if (parcelable instanceof Bundle) {
+                CharSequence message = ((Bundle) parcelable).getCharSequence(KEY_MESSAGE_TEXT);
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        return Collections.unmodifiableList(messages);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
+
+/**
+ * Rule which decides which notifications are delivered by the listener
+ *
+ * A notification matches a filter if it satisfies all of its conditions
+ * and it is delivered if it matches any of the registered filters.
+ */
+public final class NotificationFilter {
+
+    static final int NO_MIN_IMPORTANCE = Integer.MIN_VALUE;
+
+    private final Set<String> allowedPackages;
+    private final Set<String> deniedPackages;
+    private final Set<String> channelIds;
+    private final int requiredFlags;
+    private final int excludedFlags;
+    private final int minImportance;
+
+    private NotificationFilter(@NonNull Builder builder) {
+        this.allowedPackages = Collections.unmodifiableSet(new HashSet<>(builder.allowedPackages));
+        this.deniedPackages = Collections.unmodifiableSet(new HashSet<>(builder.deniedPackages));
+        this.channelIds = Collections.unmodifiableSet(new HashSet<>(builder.channelIds));
+        this.requiredFlags = builder.requiredFlags;
+        this.excludedFlags = builder.excludedFlags;
+        this.minImportance = builder.minImportance;
+    }
+
+    /**
+     * Returns a new builder
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the packages whose notifications match or an empty set for all packages
+     */
+    @NonNull
+    public Set<String> getAllowedPackages() {
+        return allowedPackages;
+    }
+
+    /**
+     * Returns the packages whose notifications never match
+     */
+    @NonNull
+    public Set<String> getDeniedPackages() {
+        return deniedPackages;
+    }
+
+    /**
+     * Returns the channel ids of the notifications which match or an empty set for all channels
+     */
+    @NonNull
+    public Set<String> getChannelIds() {
+        return channelIds;
+    }
+
+    /**
+     * Returns the notification flags which must all be set
+     */
+    public int getRequiredFlags() {
+        return requiredFlags;
+    }
+
+    /**
+     * Returns the notification flags which must not be set
+     */
+    public int getExcludedFlags() {
+        return excludedFlags;
+    }
+
+    /**
+     * Returns the min importance of the notifications which match
+     */
+    public int getMinImportance() {
+        return minImportance;
+    }
+
+    /**
+     * Builds notification filters
+     */
+    public static final class Builder {
+
+        private final Set<String> allowedPackages = new HashSet<>();
+        private final Set<String> deniedPackages = new HashSet<>();
+        private final Set<String> channelIds = new HashSet<>();
+        private int requiredFlags;
+        private int excludedFlags;
+        private int minImportance = NO_MIN_IMPORTANCE;
+
+        private Builder() {}
+
+        /**
+         * Only matches notifications of the packages
+         */
+        @NonNull
+        public Builder allowPackages(@NonNull String... packageNames) {
+            checkNotNull(packageNames, "packageNames == null");
+            allowedPackages.addAll(Arrays.asList(packageNames));
+            return this;
+        }
+
+        /**
+         * Never matches notifications of the packages
+         */
+        @NonNull
+        public Builder denyPackages(@NonNull String... packageNames) {
+            checkNotNull(packageNames, "packageNames == null");
+            deniedPackages.addAll(Arrays.asList(packageNames));
+            return this;
+        }
+
+        /**
+         * Only matches notifications which were posted to the channels
+         */
+        @RequiresApi(api = Build.VERSION_CODES.O)
+        @NonNull
+        public Builder channelIds(@NonNull String... channelIds) {
+            checkNotNull(channelIds, "channelIds == null");
+            this.channelIds.addAll(Arrays.asList(channelIds));
+            return this;
+        }
+
+        /**
+         * Only matches notifications which have all of the flags for example {@link android.app.Notification#FLAG_ONGOING_EVENT}
+         */
+        @NonNull
+        public Builder requireFlags(int flags) {
+            this.requiredFlags |= flags;
+            return this;
+        }
+
+        /**
+         * Only matches notifications which have none of the flags for example {@link android.app.Notification#FLAG_FOREGROUND_SERVICE}
+         */
+        @NonNull
+        public Builder excludeFlags(int flags) {
+            this.excludedFlags |= flags;
+            return this;
+        }
+
+        /**
+         * Only matches notifications whose importance is at least the provided one
+         */
+        @RequiresApi(api = Build.VERSION_CODES.N)
+        @NonNull
+        public Builder minImportance(int importance) {
+            this.minImportance = importance;
+            return this;
+        }
+
+        /**
+         * Returns the filter
+         */
+        @NonNull
+        public NotificationFilter build() {
+            return new NotificationFilter(this);
+        }
+    }
+}
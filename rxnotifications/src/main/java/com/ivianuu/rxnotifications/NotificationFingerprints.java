@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.app.Notification;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.BIG_TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.MESSAGES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.SUB_TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT_LINES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TITLE;
+
+/**
+ * Remembers a content fingerprint per notification key to detect re-posts without visible changes
+ */
+final class NotificationFingerprints {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    // pixels per side which are sampled from a large icon bitmap
+    private static final int ICON_SAMPLES = 4;
+
+    private final Map<String, Fingerprint> fingerprints = new HashMap<>();
+
+    private long suppressed;
+
+    /**
+     * Stores the fingerprint of the posted notification and returns whether it equals the previous one
+     */
+    synchronized boolean isUnchanged(@NonNull NotificationEvent event) {
+        long value = fingerprint(event);
+        String key = Util.getKey(event.getStatusBarNotification());
+
+        Fingerprint fingerprint = fingerprints.get(key);
+        if (fingerprint == null) {
+            fingerprints.put(key, new Fingerprint(value));
+            return false;
+        }
+
+        if (fingerprint.value == value) {
+            suppressed++;
+            return true;
+        }
+
+        fingerprint.value = value;
+        return false;
+    }
+
+    synchronized void remove(@NonNull String key) {
+        fingerprints.remove(key);
+    }
+
+    synchronized void clear() {
+        fingerprints.clear();
+    }
+
+    /**
+     * Returns the count of suppressed updates
+     */
+    synchronized long getSuppressed() {
+        return suppressed;
+    }
+
+    private static long fingerprint(NotificationEvent event) {
+        Notification notification = event.getStatusBarNotification().getNotification();
+        event.decodeExtras(TITLE | TEXT | SUB_TEXT | BIG_TEXT | TEXT_LINES | MESSAGES);
+
+        long hash = FNV_OFFSET;
+        hash = mix(hash, notification.flags);
+        hash = mix(hash, notification.number);
+        hash = mixSmallIcon(hash, notification);
+        hash = mixLargeIcon(hash, notification);
+        hash = mix(hash, event.getTitle());
+        hash = mix(hash, event.getText());
+        hash = mix(hash, event.getSubText());
+        hash = mix(hash, event.getBigText());
+        hash = mix(hash, event.getTextLines());
+        hash = mix(hash, event.getMessages());
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // progress updates only change these extras
+            Bundle extras = notification.extras;
+            if (extras != null) {
+                hash = mix(hash, extras.getInt(Notification.EXTRA_PROGRESS));
+                hash = mix(hash, extras.getInt(Notification.EXTRA_PROGRESS_MAX));
+                hash = mix(hash, extras.getBoolean(Notification.EXTRA_PROGRESS_INDETERMINATE) ? 1 : 0);
+            }
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            hash = mix(hash, notification.category);
+            hash = mix(hash, notification.color);
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            hash = mix(hash, notification.getChannelId());
+        }
+
+        if (notification.actions != null) {
+            hash = mix(hash, notification.actions.length);
+            for (Notification.Action action : notification.actions) {
+                hash = mix(hash, action.title);
+            }
+        }
+
+        return hash;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long mixSmallIcon(long hash, Notification notification) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // icons have no equals, the description contains the type and the resource or bitmap size
+            Icon icon = notification.getSmallIcon();
+            return mix(hash, icon != null ? icon.toString() : null);
+        }
+        return mix(hash, notification.icon);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long mixLargeIcon(long hash, Notification notification) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Icon icon = notification.getLargeIcon();
+            return mix(hash, icon != null ? icon.toString() : null);
+        }
+
+        Bitmap bitmap = notification.largeIcon;
+        if (bitmap == null || bitmap.isRecycled()) {
+            return mix(hash, -1);
+        }
+
+        // every post carries a new bitmap instance so sample a few pixels instead of hashing all
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        hash = mix(hash, width);
+        hash = mix(hash, height);
+        for (int y = 0; y < ICON_SAMPLES; y++) {
+            for (int x = 0; x < ICON_SAMPLES; x++) {
+                hash = mix(hash, bitmap.getPixel((2 * x + 1) * width / (2 * ICON_SAMPLES),
+                        (2 * y + 1) * height / (2 * ICON_SAMPLES)));
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, int value) {
+        for (int i = 0; i < 4; i++) {
+            hash ^= (value >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, @Nullable CharSequence charSequence) {
+        if (charSequence == null) {
+            return mix(hash, -1);
+        }
+
+        // the length separates adjacent fields so moving characters between them changes the hash
+        int length = charSequence.length();
+        hash = mix(hash, length);
+        for (int i = 0; i < length; i++) {
+            char c = charSequence.charAt(i);
+            hash ^= c & 0xff;
+            hash *= FNV_PRIME;
+            hash ^= c >>> 8;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, @NonNull List<CharSequence> charSequences) {
+        hash = mix(hash, charSequences.size());
+        for (CharSequence charSequence : charSequences) {
+            hash = mix(hash, charSequence);
+        }
+        return hash;
+    }
+
+    private static final class Fingerprint {
+
+        private long value;
+
+        private Fingerprint(long value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Immutable copy of the ranking fields of a notification
+ */
+public final class NotificationRanking {
+
+    private final String key;
+    private final int rank;
+    private final int importance;
+    private final boolean ambient;
+    private final boolean matchesInterruptionFilter;
+    private final String channelId;
+    private final boolean removed;
+
+    NotificationRanking(@NonNull String key,
+                        int rank,
+                        int importance,
+                        boolean ambient,
+                        boolean matchesInterruptionFilter,
+                        @Nullable String channelId) {
+        this(key, rank, importance, ambient, matchesInterruptionFilter, channelId, false);
+    }
+
+    private NotificationRanking(@NonNull String key,
+                                int rank,
+                                int importance,
+                                boolean ambient,
+                                boolean matchesInterruptionFilter,
+                                @Nullable String channelId,
+                                boolean removed) {
+        this.key = key;
+        this.rank = rank;
+        this.importance = importance;
+        this.ambient = ambient;
+        this.matchesInterruptionFilter = matchesInterruptionFilter;
+        this.channelId = channelId;
+        this.removed = removed;
+    }
+
+    /**
+     * Returns a ranking which signals that the key is not ranked anymore
+     */
+    @NonNull
+    static NotificationRanking removed(@NonNull String key) {
+        return new NotificationRanking(key, -1, 0, false, false, null, true);
+    }
+
+    /**
+     * Returns the key of the notification
+     */
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the rank of the notification or -1 if it was removed
+     */
+    public int getRank() {
+        return rank;
+    }
+
+    /**
+     * Returns the importance of the notification or 0 if unknown
+     */
+    public int getImportance() {
+        return importance;
+    }
+
+    /**
+     * Returns whether the notification is ambient
+     */
+    public boolean isAmbient() {
+        return ambient;
+    }
+
+    /**
+     * Returns whether the notification matches the current interruption filter
+     */
+    public boolean matchesInterruptionFilter() {
+        return matchesInterruptionFilter;
+    }
+
+    /**
+     * Returns the channel id of the notification
+     */
+    @Nullable
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Returns whether the notification left the ranking, all other fields are unset then
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.os.Build;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.ivianuu.rxnotifications.NotificationRule.RuleAction.ACTION_CANCEL;
+import static com.ivianuu.rxnotifications.NotificationRule.RuleAction.ACTION_SET_SHOWN;
+import static com.ivianuu.rxnotifications.NotificationRule.RuleAction.ACTION_SNOOZE;
+import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
+
+/**
+ * Rule which automatically cancels, snoozes or marks posted notifications as shown
+ *
+ * Rules are matched by package, then by channel and the text pattern is only checked last.
+ * All actions of matching rules are executed, a cancel supersedes snoozing and marking as shown.
+ */
+public final class NotificationRule {
+
+    @IntDef(value = {ACTION_CANCEL, ACTION_SNOOZE, ACTION_SET_SHOWN})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface RuleAction {
+        int ACTION_CANCEL = 0;
+        int ACTION_SNOOZE = 1;
+        int ACTION_SET_SHOWN = 2;
+    }
+
+    private static final int ACTION_NONE = -1;
+
+    private final String packageName;
+    private final String channelId;
+    private final Pattern textPattern;
+    private final int action;
+    private final long snoozeDurationMillis;
+
+    private NotificationRule(@NonNull Builder builder) {
+        this.packageName = builder.packageName;
+        this.channelId = builder.channelId;
+        this.textPattern = builder.textPattern;
+        this.action = builder.action;
+        this.snoozeDurationMillis = builder.snoozeDurationMillis;
+    }
+
+    /**
+     * Returns a new builder
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the package of the notifications which match or null for all packages
+     */
+    @Nullable
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the channel id of the notifications which match or null for all channels
+     */
+    @Nullable
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Returns the pattern which must be found in the title or the text or null for all texts
+     */
+    @Nullable
+    public Pattern getTextPattern() {
+        return textPattern;
+    }
+
+    /**
+     * Returns the action which is executed for matching notifications
+     */
+    @RuleAction
+    public int getAction() {
+        return action;
+    }
+
+    /**
+     * Returns the snooze duration if the action is {@link RuleAction#ACTION_SNOOZE}
+     */
+    public long getSnoozeDurationMillis() {
+        return snoozeDurationMillis;
+    }
+
+    /**
+     * Builds notification rules
+     */
+    public static final class Builder {
+
+        private String packageName;
+        private String channelId;
+        private Pattern textPattern;
+        private int action = ACTION_NONE;
+        private long snoozeDurationMillis;
+
+        private Builder() {}
+
+        /**
+         * Only matches notifications of the package
+         */
+        @NonNull
+        public Builder packageName(@NonNull String packageName) {
+            checkNotNull(packageName, "packageName == null");
+            this.packageName = packageName;
+            return this;
+        }
+
+        /**
+         * Only matches notifications which were posted to the channel
+         */
+        @RequiresApi(api = Build.VERSION_CODES.O)
+        @NonNull
+        public Builder channelId(@NonNull String channelId) {
+            checkNotNull(channelId, "channelId == null");
+            this.channelId = channelId;
+            return this;
+        }
+
+        /**
+         * Only matches notifications whose title or text contains the pattern
+         */
+        @NonNull
+        public Builder textPattern(@NonNull Pattern textPattern) {
+            checkNotNull(textPattern, "textPattern == null");
+            this.textPattern = textPattern;
+            return this;
+        }
+
+        /**
+         * Cancels the matching notifications
+         */
+        @NonNull
+        public Builder cancel() {
+            this.action = ACTION_CANCEL;
+            return this;
+        }
+
+        /**
+         * Snoozes the matching notifications for the duration
+         */
+        @RequiresApi(api = Build.VERSION_CODES.O)
+        @NonNull
+        public Builder snooze(long duration, @NonNull TimeUnit unit) {
+            checkNotNull(unit, "unit == null");
+            if (duration <= 0) {
+                throw new IllegalArgumentException("duration must be > 0");
+            }
+            this.action = ACTION_SNOOZE;
+            this.snoozeDurationMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Marks the matching notifications as shown
+         */
+        @RequiresApi(api = Build.VERSION_CODES.O)
+        @NonNull
+        public Builder setShown() {
+            this.action = ACTION_SET_SHOWN;
+            return this;
+        }
+
+        /**
+         * Returns the rule
+         */
+        @NonNull
+        public NotificationRule build() {
+            if (action == ACTION_NONE) {
+                throw new IllegalStateException("no action set");
+            }
+            return new NotificationRule(this);
+        }
+    }
+}
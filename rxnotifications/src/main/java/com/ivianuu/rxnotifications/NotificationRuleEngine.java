@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Completable;
+
+import static com.ivianuu.rxnotifications.CommandPriority.PRIORITY_BACKGROUND;
+import static com.ivianuu.rxnotifications.NotificationRule.RuleAction.ACTION_CANCEL;
+import static com.ivianuu.rxnotifications.NotificationRule.RuleAction.ACTION_SET_SHOWN;
+import static com.ivianuu.rxnotifications.NotificationRule.RuleAction.ACTION_SNOOZE;
+
+/**
+ * Matches posted notifications against the registered rules on the dispatcher thread
+ *
+ * The actions of all matches within one dispatch cycle are collected and sent
+ * as background commands once the already queued callbacks were handled.
+ */
+final class NotificationRuleEngine {
+
+    private final Dispatcher dispatcher;
+    private final CommandQueue commandQueue;
+
+    // only touched on the dispatcher thread
+    private final List<RuleIndex.CompiledRule> candidates = new ArrayList<>();
+    private final List<StatusBarNotification> pendingCancels = new ArrayList<>();
+    private final List<StatusBarNotification> pendingShown = new ArrayList<>();
+    private final Map<Long, List<StatusBarNotification>> pendingSnoozes = new LinkedHashMap<>();
+    private final Runnable flush = this::flush;
+    private boolean flushScheduled;
+
+    NotificationRuleEngine(@NonNull Dispatcher dispatcher, @NonNull CommandQueue commandQueue) {
+        this.dispatcher = dispatcher;
+        this.commandQueue = commandQueue;
+    }
+
+    /**
+     * Evaluates the rules for the posted notification and queues the actions of the matching ones
+     */
+    void onNotificationPosted(@NonNull NotificationEvent event) {
+        RuleIndex index = RxNotifications.getRuleIndex();
+        if (index.isEmpty()) {
+            return;
+        }
+
+        StatusBarNotification sbn = event.getStatusBarNotification();
+        String channelId = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            channelId = sbn.getNotification().getChannelId();
+        }
+
+        index.collectCandidates(sbn.getPackageName(), channelId, candidates);
+        try {
+            for (int i = 0; i < candidates.size(); i++) {
+                RuleIndex.CompiledRule rule = candidates.get(i);
+                if (rule.evaluate(event)) {
+                    enqueue(rule.rule, sbn);
+                }
+            }
+        } finally {
+            candidates.clear();
+        }
+    }
+
+    private void enqueue(NotificationRule rule, StatusBarNotification sbn) {
+        switch (rule.getAction()) {
+            case ACTION_CANCEL:
+                pendingCancels.add(sbn);
+                break;
+            case ACTION_SNOOZE:
+                List<StatusBarNotification> snoozes = pendingSnoozes.get(rule.getSnoozeDurationMillis());
+                if (snoozes == null) {
+                    snoozes = new ArrayList<>();
+                    pendingSnoozes.put(rule.getSnoozeDurationMillis(), snoozes);
+                }
+                snoozes.add(sbn);
+                break;
+            case ACTION_SET_SHOWN:
+                pendingShown.add(sbn);
+                break;
+        }
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            // posted behind the callbacks which are already waiting so they end up in the same batch
+            dispatcher.schedule(flush, 0);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    private void flush() {
+        flushScheduled = false;
+
+        // the command queue merges the lanes and drops snoozes of cancelled notifications
+        if (!pendingCancels.isEmpty()) {
+            submit(commandQueue.cancel(new ArrayList<>(pendingCancels), PRIORITY_BACKGROUND));
+            pendingCancels.clear();
+        }
+        for (Map.Entry<Long, List<StatusBarNotification>> snoozes : pendingSnoozes.entrySet()) {
+            submit(commandQueue.snooze(snoozes.getValue(), snoozes.getKey(), PRIORITY_BACKGROUND));
+        }
+        pendingSnoozes.clear();
+        if (!pendingShown.isEmpty()) {
+            submit(commandQueue.setShown(new ArrayList<>(pendingShown), PRIORITY_BACKGROUND));
+            pendingShown.clear();
+        }
+    }
+
+    private static void submit(Completable command) {
+        // nobody waits for automatic actions, a notification which is gone already is fine
+        command.onErrorComplete().subscribe();
+    }
+}
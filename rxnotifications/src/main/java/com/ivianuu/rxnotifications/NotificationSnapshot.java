@@ -0,0 +1,177 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.app.Notification;
+import android.os.Build;
+import android.os.Bundle;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Slim immutable copy of a notification without bitmaps, remote views or extras
+ */
+public final class NotificationSnapshot {
+
+    private final String key;
+    private final String packageName;
+    private final int id;
+    private final String tag;
+    private final long postTime;
+    private final int flags;
+    private final String channelId;
+    private final String groupKey;
+    private final String title;
+    private final String text;
+
+    NotificationSnapshot(@NonNull String key,
+                         @NonNull String packageName,
+                         int id,
+                         @Nullable String tag,
+                         long postTime,
+                         int flags,
+                         @Nullable String channelId,
+                         @Nullable String groupKey,
+                         @Nullable String title,
+                         @Nullable String text) {
+        this.key = key;
+        this.packageName = packageName;
+        this.id = id;
+        this.tag = tag;
+        this.postTime = postTime;
+        this.flags = flags;
+        this.channelId = channelId;
+        this.groupKey = groupKey;
+        this.title = title;
+        this.text = text;
+    }
+
+    /**
+     * Returns a snapshot of the status bar notification
+     */
+    @NonNull
+    public static NotificationSnapshot from(@NonNull StatusBarNotification sbn) {
+        Notification notification = sbn.getNotification();
+
+        String channelId = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            channelId = notification.getChannelId();
+        }
+
+        String groupKey = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            groupKey = sbn.getGroupKey();
+        }
+
+        String title = null;
+        String text = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            Bundle extras = notification.extras;
+            if (extras != null) {
+                // copy the plain text so spans don't keep anything alive
+                title = toString(extras.getCharSequence(Notification.EXTRA_TITLE));
+                text = toString(extras.getCharSequence(Notification.EXTRA_TEXT));
+            }
+        }
+
+        return new NotificationSnapshot(Util.getKey(sbn), sbn.getPackageName(), sbn.getId(),
+                sbn.getTag(), sbn.getPostTime(), notification.flags, channelId, groupKey, title, text);
+    }
+
+    /**
+     * Returns the key of the notification
+     */
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the package name of the notification
+     */
+    @NonNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the id of the notification
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the tag of the notification
+     */
+    @Nullable
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * Returns the post time of the notification
+     */
+    public long getPostTime() {
+        return postTime;
+    }
+
+    /**
+     * Returns the flags of the notification
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Returns the channel id of the notification
+     */
+    @Nullable
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Returns the group key of the notification
+     */
+    @Nullable
+    public String getGroupKey() {
+        return groupKey;
+    }
+
+    /**
+     * Returns the title of the notification
+     */
+    @Nullable
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Returns the text of the notification
+     */
+    @Nullable
+    public String getText() {
+        return text;
+    }
+
+    @Nullable
+    private static String toString(@Nullable CharSequence charSequence) {
+        return charSequence != null ? charSequence.toString() : null;
+    }
+}
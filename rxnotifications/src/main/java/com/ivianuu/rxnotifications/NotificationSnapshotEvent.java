@@ -0,0 +1,68 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Represents a notification event which only carries a slim snapshot of the notification
+ */
+public final class NotificationSnapshotEvent {
+
+    private final NotificationSnapshot snapshot;
+    private final int eventType;
+    private final boolean reconciled;
+
+    /**
+     * Constructs a new notification snapshot event
+     */
+    public NotificationSnapshotEvent(@NonNull NotificationSnapshot snapshot,
+                                     @NotificationEvent.NotificationEventType int eventType) {
+        this(snapshot, eventType, false);
+    }
+
+    NotificationSnapshotEvent(@NonNull NotificationSnapshot snapshot,
+                              @NotificationEvent.NotificationEventType int eventType,
+                              boolean reconciled) {
+        this.snapshot = snapshot;
+        this.eventType = eventType;
+        this.reconciled = reconciled;
+    }
+
+    /**
+     * Returns the notification snapshot of this event
+     */
+    @NonNull
+    public NotificationSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the event type
+     */
+    @NotificationEvent.NotificationEventType
+    public int getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Returns whether this event was synthesized after the listener reconnected
+     */
+    public boolean isReconciled() {
+        return reconciled;
+    }
+}
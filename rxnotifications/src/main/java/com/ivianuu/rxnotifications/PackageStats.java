@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import static com.ivianuu.rxnotifications.PackageStats.StatsWindow.WINDOW_DAY;
+import static com.ivianuu.rxnotifications.PackageStats.StatsWindow.WINDOW_HOUR;
+import static com.ivianuu.rxnotifications.PackageStats.StatsWindow.WINDOW_MINUTE;
+
+/**
+ * Notification counts of a package within a time window
+ */
+public final class PackageStats {
+
+    @IntDef(value = {WINDOW_MINUTE, WINDOW_HOUR, WINDOW_DAY})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface StatsWindow {
+        int WINDOW_MINUTE = 0;
+        int WINDOW_HOUR = 1;
+        int WINDOW_DAY = 2;
+    }
+
+    private final String packageName;
+    private final int posted;
+    private final int removed;
+    private final int cancelled;
+
+    PackageStats(@NonNull String packageName, int posted, int removed, int cancelled) {
+        this.packageName = packageName;
+        this.posted = posted;
+        this.removed = removed;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Returns the package name
+     */
+    @NonNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the count of posted notifications including updates
+     */
+    public int getPosted() {
+        return posted;
+    }
+
+    /**
+     * Returns the count of removed notifications
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns the count of notifications which were cancelled through this library
+     */
+    public int getCancelled() {
+        return cancelled;
+    }
+}
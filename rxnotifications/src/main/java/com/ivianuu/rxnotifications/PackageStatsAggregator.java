@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts posted, removed and cancelled notifications per package in time bucketed ring buffers
+ *
+ * Package names are interned to int ids and the counters of every window are kept in one
+ * flat int array laid out as [package][bucket][type] so counting never allocates.
+ */
+final class PackageStatsAggregator {
+
+    private static final int TYPE_POSTED = 0;
+    private static final int TYPE_REMOVED = 1;
+    private static final int TYPE_CANCELLED = 2;
+    private static final int TYPE_COUNT = 3;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> packageIds = new HashMap<>();
+    private String[] packageNames = new String[INITIAL_CAPACITY];
+    private int packageCount;
+
+    // indexed by the stats window
+    private final Ring[] rings = {
+            new Ring(60, TimeUnit.SECONDS.toMillis(1)),
+            new Ring(60, TimeUnit.MINUTES.toMillis(1)),
+            new Ring(24, TimeUnit.HOURS.toMillis(1))
+    };
+
+    synchronized void onPosted(@NonNull String packageName) {
+        increment(packageName, TYPE_POSTED);
+    }
+
+    synchronized void onRemoved(@NonNull String packageName) {
+        increment(packageName, TYPE_REMOVED);
+    }
+
+    synchronized void onCancelled(@NonNull String packageName) {
+        increment(packageName, TYPE_CANCELLED);
+    }
+
+    /**
+     * Returns the length of one bucket of the window which is also its resolution
+     */
+    long getBucketMillis(@PackageStats.StatsWindow int window) {
+        return rings[window].bucketMillis;
+    }
+
+    /**
+     * Returns the counts of all packages with any notifications within the window
+     */
+    @NonNull
+    synchronized List<PackageStats> snapshot(@PackageStats.StatsWindow int window) {
+        Ring ring = rings[window];
+        long currentBucket = SystemClock.elapsedRealtime() / ring.bucketMillis;
+        List<PackageStats> stats = new ArrayList<>();
+        for (int id = 0; id < packageCount; id++) {
+            int posted = ring.sum(id, TYPE_POSTED, currentBucket);
+            int removed = ring.sum(id, TYPE_REMOVED, currentBucket);
+            int cancelled = ring.sum(id, TYPE_CANCELLED, currentBucket);
+            if (posted != 0 || removed != 0 || cancelled != 0) {
+                stats.add(new PackageStats(packageNames[id], posted, removed, cancelled));
+            }
+        }
+        return stats;
+    }
+
+    private void increment(String packageName, int type) {
+        int id = intern(packageName);
+        long now = SystemClock.elapsedRealtime();
+        for (Ring ring : rings) {
+            ring.increment(id, type, now);
+        }
+    }
+
+    private int intern(String packageName) {
+        Integer id = packageIds.get(packageName);
+        if (id != null) {
+            return id;
+        }
+
+        if (packageCount == packageNames.length) {
+            int capacity = packageNames.length * 2;
+            packageNames = Arrays.copyOf(packageNames, capacity);
+            for (Ring ring : rings) {
+                ring.grow(capacity);
+            }
+        }
+
+        int newId = packageCount++;
+        packageNames[newId] = packageName;
+        packageIds.put(packageName, newId);
+        return newId;
+    }
+
+    private static final class Ring {
+
+        private final int buckets;
+        private final long bucketMillis;
+        // the absolute bucket number each slot currently holds
+        private final long[] slotBuckets;
+        private int[] counts;
+        private int capacity;
+
+        private Ring(int buckets, long bucketMillis) {
+            this.buckets = buckets;
+            this.bucketMillis = bucketMillis;
+            this.slotBuckets = new long[buckets];
+            Arrays.fill(slotBuckets, -1);
+            this.capacity = INITIAL_CAPACITY;
+            this.counts = new int[capacity * buckets * TYPE_COUNT];
+        }
+
+        private void grow(int capacity) {
+            // new packages are appended so the existing layout stays valid
+            this.counts = Arrays.copyOf(counts, capacity * buckets * TYPE_COUNT);
+            this.capacity = capacity;
+        }
+
+        private void increment(int id, int type, long now) {
+            long bucket = now / bucketMillis;
+            int slot = (int) (bucket % buckets);
+            if (slotBuckets[slot] != bucket) {
+                // the slot still holds an expired bucket so reset it for every package
+                for (int i = 0; i < capacity; i++) {
+                    int offset = (i * buckets + slot) * TYPE_COUNT;
+                    Arrays.fill(counts, offset, offset + TYPE_COUNT, 0);
+                }
+                slotBuckets[slot] = bucket;
+            }
+            counts[(id * buckets + slot) * TYPE_COUNT + type]++;
+        }
+
+        private int sum(int id, int type, long currentBucket) {
+            int sum = 0;
+            for (int slot = 0; slot < buckets; slot++) {
+                long bucket = slotBuckets[slot];
+                if (bucket > currentBucket - buckets && bucket <= currentBucket) {
+                    sum += counts[(id * buckets + slot) * TYPE_COUNT + type];
+                }
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Keeps the active notifications ordered by their rank
+ * Moving, adding or removing a single notification costs O(log n)
+ */
+final class RankedNotifications {
+
+    /**
+     * Rank of notifications which were not ranked yet
+     */
+    static final int UNRANKED = Integer.MAX_VALUE;
+
+    private static final Comparator<Node> COMPARATOR = (a, b) -> {
+        int result = Integer.compare(a.rank, b.rank);
+        return result != 0 ? result : a.key.compareTo(b.key);
+    };
+
+    private final TreeSet<Node> nodes = new TreeSet<>(COMPARATOR);
+    private final Map<String, Node> nodesByKey = new HashMap<>();
+
+    /**
+     * Adds or replaces the notification
+     */
+    synchronized void put(@NonNull StatusBarNotification sbn, int rank) {
+        String key = Util.getKey(sbn);
+        Node node = nodesByKey.get(key);
+        if (node != null) {
+            nodes.remove(node);
+        } else {
+            node = new Node(key);
+            nodesByKey.put(key, node);
+        }
+
+        node.sbn = sbn;
+        node.rank = rank;
+        nodes.add(node);
+    }
+
+    /**
+     * Removes the notification
+     */
+    synchronized void remove(@NonNull String key) {
+        Node node = nodesByKey.remove(key);
+        if (node != null) {
+            nodes.remove(node);
+        }
+    }
+
+    /**
+     * Moves the notification to its new rank and returns whether it moved
+     */
+    synchronized boolean updateRank(@NonNull String key, int rank) {
+        Node node = nodesByKey.get(key);
+        if (node == null || node.rank == rank) {
+            return false;
+        }
+
+        nodes.remove(node);
+        node.rank = rank;
+        nodes.add(node);
+        return true;
+    }
+
+    synchronized void clear() {
+        nodes.clear();
+        nodesByKey.clear();
+    }
+
+    /**
+     * Returns the notifications in rank order
+     */
+    @NonNull
+    synchronized List<StatusBarNotification> snapshot() {
+        List<StatusBarNotification> notifications = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            notifications.add(node.sbn);
+        }
+        return notifications;
+    }
+
+    private static final class Node {
+
+        private final String key;
+        private StatusBarNotification sbn;
+        private int rank;
+
+        private Node(String key) {
+            this.key = key;
+        }
+    }
+}
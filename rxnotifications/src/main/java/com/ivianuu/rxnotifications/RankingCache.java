@@ -0,0 +1,138 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.os.Build;
+import android.service.notification.NotificationListenerService;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the ranking fields per notification key and detects which of them changed
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+final class RankingCache {
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    // reused for every lookup
+    private final NotificationListenerService.Ranking ranking = new NotificationListenerService.Ranking();
+
+    private long generation;
+
+    /**
+     * Applies the ranking map and returns the rankings which changed
+     * Keys which are not ranked anymore are returned as removed rankings
+     */
+    @NonNull
+    synchronized List<NotificationRanking> update(@NonNull NotificationListenerService.RankingMap rankingMap) {
+        generation++;
+
+        List<NotificationRanking> changed = new ArrayList<>();
+        for (String key : rankingMap.getOrderedKeys()) {
+            if (!rankingMap.getRanking(key, ranking)) {
+                continue;
+            }
+
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(key, entry);
+            }
+            entry.generation = generation;
+
+            if (entry.ranking == null || !matches(entry.ranking, ranking)) {
+                entry.ranking = toNotificationRanking(key, ranking);
+                changed.add(entry.ranking);
+            }
+        }
+
+        // drop the keys which are not ranked anymore
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getValue().generation != generation) {
+                iterator.remove();
+                changed.add(NotificationRanking.removed(entry.getKey()));
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the cached ranking of the key
+     */
+    @Nullable
+    synchronized NotificationRanking get(@NonNull String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.ranking : null;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    private static boolean matches(NotificationRanking cached, NotificationListenerService.Ranking ranking) {
+        if (cached.getRank() != ranking.getRank()
+                || cached.isAmbient() != ranking.isAmbient()
+                || cached.matchesInterruptionFilter() != ranking.matchesInterruptionFilter()) {
+            return false;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                && cached.getImportance() != ranking.getImportance()) {
+            return false;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            String channelId = ranking.getChannel() != null ? ranking.getChannel().getId() : null;
+            if (channelId == null ? cached.getChannelId() != null : !channelId.equals(cached.getChannelId())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static NotificationRanking toNotificationRanking(String key, NotificationListenerService.Ranking ranking) {
+        int importance = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            importance = ranking.getImportance();
+        }
+
+        String channelId = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && ranking.getChannel() != null) {
+            channelId = ranking.getChannel().getId();
+        }
+
+        return new NotificationRanking(key, ranking.getRank(), importance,
+                ranking.isAmbient(), ranking.matchesInterruptionFilter(), channelId);
+    }
+
+    private static final class Entry {
+        private NotificationRanking ranking;
+        private long generation;
+    }
+}
@@ -19,28 +19,47 @@ package com.ivianuu.rxnotifications;
 import android.app.NotificationChannel;
 import android.app.NotificationChannelGroup;
 import android.os.Build;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 
+import com.ivianuu.rxnotifications.history.HistoryJournal;
+import com.ivianuu.rxnotifications.history.HistoryRecord;
+
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.processors.BehaviorProcessor;
 import io.reactivex.processors.PublishProcessor;
+import io.reactivex.processors.UnicastProcessor;
+import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.PublishSubject;
 
+import static com.ivianuu.rxnotifications.CommandPriority.PRIORITY_USER;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.BIG_TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.MESSAGES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT_LINES;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TITLE;
 import static com.ivianuu.rxnotifications.NotificationEvent.NotificationEventType.NOTIFICATION_POSTED;
 import static com.ivianuu.rxnotifications.NotificationEvent.NotificationEventType.NOTIFICATION_REMOVED;
+import static com.ivianuu.rxnotifications.PackageStats.StatsWindow.WINDOW_DAY;
+import static com.ivianuu.rxnotifications.PackageStats.StatsWindow.WINDOW_MINUTE;
 import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
 
 /**
@@ -48,64 +67,282 @@ import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
  */
 class RealNotificationListener implements RxNotificationListener, RxNotificationListenerService.ServiceCallbacks {
 
+    private static final String HISTORY_DIRECTORY = "rxnotifications/history";
+
     private RxNotificationListenerService service;
+    private final RxNotificationsConfig config;
+
+    private final ActiveNotificationIndex activeNotifications;
+    private final CommandBatcher commandBatcher;
+    private final CommandQueue commandQueue;
+    private final NotificationRuleEngine ruleEngine;
+    private final PackageStatsAggregator packageStats = new PackageStatsAggregator();
+    private final NotificationEventRouter eventRouter = new NotificationEventRouter();
+    private final ChannelRegistry channelRegistry;
+    private final RankingCache rankingCache;
+    private final RankedNotifications rankedNotifications = new RankedNotifications();
+    private final NotificationFingerprints fingerprints = new NotificationFingerprints();
+    private final EventBatchers<NotificationEvent> notificationEventBatchers;
+    private final EventBatchers<ChannelEvent> channelEventBatchers;
+    private final EventBatchers<ChannelGroupEvent> channelGroupEventBatchers;
+    private final EventReplayBuffer<NotificationEvent> notificationEventReplay;
+    private final EventReplayBuffer<ChannelEvent> channelEventReplay;
+    private final EventReplayBuffer<ChannelGroupEvent> channelGroupEventReplay;
+    private final AtomicLong eventSequence = new AtomicLong();
+    private final AtomicLong notificationEventSequence = new AtomicLong();
+    private final AtomicLong channelEventSequence = new AtomicLong();
+    private final AtomicLong channelGroupEventSequence = new AtomicLong();
+    private final ActiveSnapshotStore snapshotStore;
+    private final HistoryJournal history;
+    private final Disposable historyDisposable;
 
     private PublishSubject<Boolean> listenerConnectedSubject = PublishSubject.create();
     private PublishProcessor<NotificationEvent> notificationEventsSubject = PublishProcessor.create();
     private BehaviorProcessor<List<StatusBarNotification>> activeNotificationsSubject = BehaviorProcessor.create();
+    private PublishProcessor<ActiveNotificationChanges> activeNotificationChangesSubject = PublishProcessor.create();
+    private BehaviorProcessor<Long> activeNotificationsVersionSubject = BehaviorProcessor.create();
+    private PublishProcessor<NotificationSnapshotEvent> notificationSnapshotEventsSubject = PublishProcessor.create();
     private PublishProcessor<ChannelEvent> channelEventsSubject = PublishProcessor.create();
     private PublishProcessor<ChannelGroupEvent> channelGroupEventsSubject = PublishProcessor.create();
     private BehaviorProcessor<Integer> interruptionFilterSubject = BehaviorProcessor.create();
     private BehaviorProcessor<Integer> listenerHintsSubject = BehaviorProcessor.create();
     private BehaviorProcessor<NotificationListenerService.RankingMap> rankingSubject = BehaviorProcessor.create();
+    private PublishProcessor<List<NotificationRanking>> rankingChangesSubject = PublishProcessor.create();
+    private BehaviorProcessor<List<StatusBarNotification>> rankedNotificationsSubject = BehaviorProcessor.create();
+
+    // only used if notifications are not retained
+    private final Flowable<List<StatusBarNotification>> queriedActiveNotifications;
+
+    private final AtomicLong droppedNotificationEvents = new AtomicLong();
+    private final AtomicLong droppedChannelEvents = new AtomicLong();
+    private final AtomicLong droppedChannelGroupEvents = new AtomicLong();
 
-    RealNotificationListener(@NonNull RxNotificationListenerService service) {
+    RealNotificationListener(@NonNull RxNotificationListenerService service,
+                             @NonNull RxNotificationsConfig config,
+                             @NonNull Dispatcher dispatcher) {
         this.service = service;
+        this.config = config;
+        this.notificationEventBatchers = new EventBatchers<>(dispatcher);
+        this.channelEventBatchers = new EventBatchers<>(dispatcher);
+        this.channelGroupEventBatchers = new EventBatchers<>(dispatcher);
+        long replayMaxAgeNanos = TimeUnit.MILLISECONDS.toNanos(config.getReplayMaxAgeMillis());
+        this.notificationEventReplay = new EventReplayBuffer<>(config.getReplayCapacity(), replayMaxAgeNanos);
+        this.channelEventReplay = new EventReplayBuffer<>(config.getReplayCapacity(), replayMaxAgeNanos);
+        this.channelGroupEventReplay = new EventReplayBuffer<>(config.getReplayCapacity(), replayMaxAgeNanos);
+        this.activeNotifications = new ActiveNotificationIndex(config.isRetainNotifications());
+        // the system is asked once for all subscribers and changes during a query collapse into one
+        this.queriedActiveNotifications = activeNotificationsVersionSubject
+                .onBackpressureLatest()
+                .observeOn(Schedulers.io(), false, 1)
+                .map(version -> Collections.unmodifiableList(queryActiveNotifications()))
+                .replay(1)
+                .refCount();
+        this.snapshotStore = config.isPersistActiveNotifications() ? new ActiveSnapshotStore(service) : null;
+        if (config.getHistoryMaxSize() > 0) {
+            this.history = new HistoryJournal(new File(service.getFilesDir(), HISTORY_DIRECTORY),
+                    config.getHistoryMaxSize(), config.isHistorySearch());
+            this.historyDisposable = notificationEventsSubject.subscribe(event -> {
+                if (event.isReconciled()) {
+                    // made up by reconnects and filter changes, the system never posted or removed it
+                    return;
+                }
+                try {
+                    // the extras are decoded on the history thread to keep the dispatcher fast
+                    long time = System.currentTimeMillis();
+                    history.append(() -> toHistoryRecord(event, time),
+                            config.isHistorySearch() ? () -> getSearchContent(event) : null);
+                } catch (RuntimeException e) {
+                    // a notification with broken extras is left out but must neither
+                    // end the subscription nor crash the service
+                }
+            });
+        } else {
+            this.history = null;
+            this.historyDisposable = null;
+        }
+        this.commandBatcher = new CommandBatcher(service, config.getCommandBatchSize());
+        this.commandQueue = new CommandQueue(service, commandBatcher, packageStats);
+        this.ruleEngine = new NotificationRuleEngine(dispatcher, commandQueue);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            this.channelRegistry = new ChannelRegistry(service, config.getChannelRegistrySize());
+        } else {
+            this.channelRegistry = null;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            this.rankingCache = new RankingCache();
+        } else {
+            this.rankingCache = null;
+        }
+    }
+
+    /**
+     * Releases the resources of this listener
+     */
+    void shutdown() {
+        commandQueue.shutdown();
+        if (snapshotStore != null) {
+            snapshotStore.shutdown();
+        }
+        if (history != null) {
+            historyDisposable.dispose();
+            history.close();
+        }
     }
 
     // SERVICE CALLBACKS
     @Override
-    public void onNotificationPosted(@NonNull StatusBarNotification sbn) {
-        notificationEventsSubject.onNext(new NotificationEvent(sbn, NOTIFICATION_POSTED));
-        activeNotificationsSubject.onNext(getActiveNotificationsInternal());
+    public void onNotificationPosted(@NonNull StatusBarNotification sbn,
+                                     @Nullable NotificationListenerService.RankingMap rankingMap,
+                                     long receivedNanos) {
+        NotificationEvent event = new NotificationEvent(sbn, NOTIFICATION_POSTED);
+        if (config.isDedupeIdenticalUpdates() && fingerprints.isUnchanged(event)) {
+            // re-posted without any visible change but the post time, intents and rank might differ
+            // so the entry and the ranking are refreshed and only the events are suppressed
+            activeNotifications.refresh(sbn);
+            if (snapshotStore != null) {
+                snapshotStore.put(activeNotifications.getSnapshot(Util.getKey(sbn)));
+            }
+            boolean moved = rankingMap != null && applyRanking(rankingMap);
+            if (activeNotifications.isRetainingNotifications()) {
+                rankedNotifications.put(sbn, getRank(Util.getKey(sbn)));
+                if (moved) {
+                    rankedNotificationsSubject.onNext(rankedNotifications.snapshot());
+                }
+            }
+            return;
+        }
+
+        boolean update = activeNotifications.put(sbn);
+        long version = activeNotifications.getVersion();
+        if (snapshotStore != null) {
+            snapshotStore.put(activeNotifications.getSnapshot(Util.getKey(sbn)));
+        }
+        if (rankingMap != null) {
+            applyRanking(rankingMap);
+        }
+        if (activeNotifications.isRetainingNotifications()) {
+            rankedNotifications.put(sbn, getRank(Util.getKey(sbn)));
+        }
+
+        publishNotificationEvent(event, receivedNanos);
+        publishActiveNotifications();
+        activeNotificationChangesSubject.onNext(
+                ActiveNotificationChanges.posted(version, sbn, update));
     }
 
     @Override
-    public void onNotificationRemoved(@NonNull StatusBarNotification sbn) {
-        notificationEventsSubject.onNext(new NotificationEvent(sbn, NOTIFICATION_REMOVED));
-        activeNotificationsSubject.onNext(getActiveNotificationsInternal());
+    public void onNotificationRemoved(@NonNull StatusBarNotification sbn,
+                                      @Nullable NotificationListenerService.RankingMap rankingMap,
+                                      long receivedNanos) {
+        boolean removed = activeNotifications.remove(sbn);
+        long version = activeNotifications.getVersion();
+        if (snapshotStore != null && removed) {
+            snapshotStore.remove(Util.getKey(sbn));
+        }
+        rankedNotifications.remove(Util.getKey(sbn));
+        fingerprints.remove(Util.getKey(sbn));
+        if (rankingMap != null) {
+            applyRanking(rankingMap);
+        }
+
+        publishNotificationEvent(new NotificationEvent(sbn, NOTIFICATION_REMOVED), receivedNanos);
+        publishActiveNotifications();
+        if (removed) {
+            activeNotificationChangesSubject.onNext(
+                    ActiveNotificationChanges.removed(version, Util.getKey(sbn)));
+        }
     }
 
     @Override
     public void onListenerConnectionChanged(boolean connected) {
+        ActiveNotificationIndex.Reconciliation reconciliation = null;
+        if (connected) {
+            // seed the index once, the callbacks keep it up to date afterwards
+            // after a reconnect only the changes since the disconnect are published
+            reconciliation = activeNotifications.reconcile(service.getMatchingActiveNotifications());
+            if (snapshotStore != null) {
+                snapshotStore.replaceAll(activeNotifications.snapshots());
+            }
+        } else {
+            activeNotifications.invalidate();
+        }
+        fingerprints.clear();
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // channel events might get lost while we're disconnected
+            channelRegistry.clear();
+        }
+
         listenerConnectedSubject.onNext(connected);
         if (connected) {
-            activeNotificationsSubject.onNext(getActiveNotificationsInternal());
+            // rebuild first so the ranking below is applied to the current notifications
+            rebuildRankedNotifications();
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                 interruptionFilterSubject.onNext(service.getCurrentInterruptionFilter());
                 listenerHintsSubject.onNext(service.getCurrentListenerHints());
-                rankingSubject.onNext(service.getCurrentRanking());
+                publishRanking(service.getCurrentRanking());
             }
 
+            if (reconciliation == null) {
+                publishActiveNotifications();
+                activeNotificationChangesSubject.onNext(getSnapshotChanges());
+            } else if (!reconciliation.isEmpty()) {
+                publishReconciliation(reconciliation);
+            }
         }
     }
 
+    /**
+     * Applies the changed filters to the index by reconciling it with the now matching notifications
+     */
+    void onFiltersChanged() {
+        if (!activeNotifications.isSeeded()) {
+            // the next connect reconciles with the current filters anyway
+            return;
+        }
+
+        ActiveNotificationIndex.Reconciliation reconciliation =
+                activeNotifications.reconcile(service.getMatchingActiveNotifications());
+        if (reconciliation == null || reconciliation.isEmpty()) {
+            return;
+        }
+
+        if (snapshotStore != null) {
+            snapshotStore.replaceAll(activeNotifications.snapshots());
+        }
+        for (String key : reconciliation.removedKeys) {
+            fingerprints.remove(key);
+        }
+        rebuildRankedNotifications();
+        publishReconciliation(reconciliation);
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.O)
     @Override
-    public void onNotificationChannelModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannel channel, int modificationType) {
-        channelEventsSubject.onNext(new ChannelEvent(pkg, user, channel, modificationType));
+    public void onNotificationChannelModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannel channel, int modificationType, long receivedNanos) {
+        ChannelEvent event = new ChannelEvent(pkg, user, channel, modificationType);
+        event.stamp(eventSequence.incrementAndGet(), channelEventSequence.incrementAndGet(), receivedNanos);
+        channelRegistry.onChannelEvent(event);
+        channelEventReplay.add(event);
+        channelEventsSubject.onNext(event);
+        channelEventBatchers.add(event);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
     @Override
-    public void onNotificationChannelGroupModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannelGroup group, int modificationType) {
-        channelGroupEventsSubject.onNext(new ChannelGroupEvent(pkg, user, group, modificationType));
+    public void onNotificationChannelGroupModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannelGroup group, int modificationType, long receivedNanos) {
+        ChannelGroupEvent event = new ChannelGroupEvent(pkg, user, group, modificationType);
+        event.stamp(eventSequence.incrementAndGet(), channelGroupEventSequence.incrementAndGet(), receivedNanos);
+        channelRegistry.onChannelGroupEvent(event);
+        channelGroupEventReplay.add(event);
+        channelGroupEventsSubject.onNext(event);
+        channelGroupEventBatchers.add(event);
     }
 
     @Override
     public void onNotificationRankingUpdate(@NonNull NotificationListenerService.RankingMap rankingMap) {
-        rankingSubject.onNext(rankingMap);
+        publishRanking(rankingMap);
     }
 
     @Override
@@ -118,11 +355,226 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
         listenerHintsSubject.onNext(hints);
     }
 
+    private void rebuildRankedNotifications() {
+        rankedNotifications.clear();
+        if (activeNotifications.isRetainingNotifications()) {
+            for (StatusBarNotification sbn : activeNotifications.snapshot()) {
+                rankedNotifications.put(sbn, getRank(Util.getKey(sbn)));
+            }
+        }
+    }
+
+    private void publishReconciliation(ActiveNotificationIndex.Reconciliation reconciliation) {
+        publishReconciledEvents(reconciliation);
+        publishActiveNotifications();
+        activeNotificationChangesSubject.onNext(new ActiveNotificationChanges(
+                activeNotifications.getVersion(), false, reconciliation.posted,
+                reconciliation.updated, reconciliation.removedKeys));
+    }
+
+    private void publishReconciledEvents(ActiveNotificationIndex.Reconciliation reconciliation) {
+        for (StatusBarNotification sbn : reconciliation.posted) {
+            publishReconciledEvent(new NotificationEvent(sbn, NOTIFICATION_POSTED));
+        }
+        for (StatusBarNotification sbn : reconciliation.updated) {
+            publishReconciledEvent(new NotificationEvent(sbn, NOTIFICATION_POSTED));
+        }
+
+        if (activeNotifications.isRetainingNotifications()) {
+            for (StatusBarNotification sbn : reconciliation.removed) {
+                publishReconciledEvent(new NotificationEvent(sbn, NOTIFICATION_REMOVED));
+            }
+        } else if (notificationSnapshotEventsSubject.hasSubscribers()) {
+            // without the full notifications removals can only be described by snapshots
+            for (NotificationSnapshot snapshot : reconciliation.removedSnapshots) {
+                notificationSnapshotEventsSubject.onNext(
+                        new NotificationSnapshotEvent(snapshot, NOTIFICATION_REMOVED, true));
+            }
+        }
+    }
+
+    private void publishReconciledEvent(NotificationEvent event) {
+        event.setReconciled(true);
+        // reconciled events are made up by the listener so they are received right now
+        publishNotificationEvent(event, SystemClock.elapsedRealtimeNanos());
+    }
+
+    private void publishNotificationEvent(NotificationEvent event, long receivedNanos) {
+        event.stamp(eventSequence.incrementAndGet(), notificationEventSequence.incrementAndGet(), receivedNanos);
+        // buffer before publishing so replaying subscribers never miss the event
+        notificationEventReplay.add(event);
+
+        notificationEventsSubject.onNext(event);
+        eventRouter.dispatch(event);
+        notificationEventBatchers.add(event);
+        if (event.getEventType() == NOTIFICATION_POSTED) {
+            packageStats.onPosted(event.getStatusBarNotification().getPackageName());
+            ruleEngine.onNotificationPosted(event);
+        } else {
+            packageStats.onRemoved(event.getStatusBarNotification().getPackageName());
+        }
+
+        if (notificationSnapshotEventsSubject.hasSubscribers()) {
+            notificationSnapshotEventsSubject.onNext(new NotificationSnapshotEvent(
+                    NotificationSnapshot.from(event.getStatusBarNotification()), event.getEventType(),
+                    event.isReconciled()));
+        }
+    }
+
+    private void publishRanking(NotificationListenerService.RankingMap rankingMap) {
+        rankingSubject.onNext(rankingMap);
+        if (applyRanking(rankingMap) && activeNotifications.isRetainingNotifications()) {
+            rankedNotificationsSubject.onNext(rankedNotifications.snapshot());
+        }
+    }
+
+    /**
+     * Updates the cached rankings and returns whether the rank order changed
+     */
+    private boolean applyRanking(NotificationListenerService.RankingMap rankingMap) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
+
+        List<NotificationRanking> changes = rankingCache.update(rankingMap);
+        if (changes.isEmpty()) {
+            return false;
+        }
+
+        boolean moved = false;
+        for (NotificationRanking ranking : changes) {
+            // removed notifications leave the ranked notifications with their removal callback
+            if (!ranking.isRemoved()) {
+                moved |= rankedNotifications.updateRank(ranking.getKey(), ranking.getRank());
+            }
+        }
+
+        rankingChangesSubject.onNext(Collections.unmodifiableList(changes));
+
+        return moved;
+    }
+
+    private int getRank(String key) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            NotificationRanking ranking = rankingCache.get(key);
+            if (ranking != null) {
+                return ranking.getRank();
+            }
+        }
+        return RankedNotifications.UNRANKED;
+    }
+
+    private void publishActiveNotifications() {
+        if (activeNotifications.isRetainingNotifications()) {
+            activeNotificationsSubject.onNext(activeNotifications.snapshot());
+            rankedNotificationsSubject.onNext(rankedNotifications.snapshot());
+        }
+        // the snapshots are only built if somebody observes them
+        activeNotificationsVersionSubject.onNext(activeNotifications.getVersion());
+    }
+
+    private List<StatusBarNotification> sortByRank(List<StatusBarNotification> notifications) {
+        Collections.sort(notifications, (a, b) -> {
+            String keyA = Util.getKey(a);
+            String keyB = Util.getKey(b);
+            int result = Integer.compare(getRank(keyA), getRank(keyB));
+            return result != 0 ? result : keyA.compareTo(keyB);
+        });
+        return notifications;
+    }
+
+    private ActiveNotificationChanges getSnapshotChanges() {
+        if (activeNotifications.isRetainingNotifications()) {
+            return activeNotifications.snapshotChanges();
+        } else {
+            return new ActiveNotificationChanges(activeNotifications.getVersion(), true,
+                    queryActiveNotifications(), Collections.emptyList(), Collections.emptyList());
+        }
+    }
+
+    private <T extends SequencedEvent> Flowable<T> replay(PublishProcessor<T> subject,
+                                                         EventReplayBuffer<T> buffer,
+                                                         long afterSequence) {
+        return Flowable.defer(() -> {
+            // subscribe first and read the buffer afterwards, events which are
+            // in both the buffer and the live stream are skipped by their sequence
+            UnicastProcessor<T> live = UnicastProcessor.create();
+            Disposable disposable = subject.subscribe(live::onNext, live::onError, live::onComplete);
+
+            long nowNanos = SystemClock.elapsedRealtimeNanos();
+            // a sequence ahead of ours was handed out by a previous listener instance
+            if (buffer.isTruncated(afterSequence, nowNanos) || afterSequence > eventSequence.get()) {
+                disposable.dispose();
+                return Flowable.error(new ReplayTruncatedException(afterSequence, buffer.getOldestSequence()));
+            }
+
+            List<T> replay = buffer.since(afterSequence, nowNanos);
+            long lastSequence = replay.isEmpty()
+                    ? afterSequence : replay.get(replay.size() - 1).getSequence();
+
+            return Flowable.fromIterable(replay)
+                    .concatWith(live.filter(event -> event.getSequence() > lastSequence))
+                    .doFinally(disposable::dispose);
+        });
+    }
+
+    private static HistoryRecord toHistoryRecord(NotificationEvent event, long time) {
+        StatusBarNotification sbn = event.getStatusBarNotification();
+        String channelId = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            channelId = sbn.getNotification().getChannelId();
+        }
+
+        event.decodeExtras(TITLE | TEXT);
+        CharSequence title = event.getTitle();
+        CharSequence text = event.getText();
+        return new HistoryRecord(time, event.getEventType(),
+                Util.getKey(sbn), sbn.getPackageName(), channelId,
+                title != null ? title.toString() : null, text != null ? text.toString() : null);
+    }
+
+    /**
+     * Returns the texts which are only indexed for search but not stored in the history
+     */
+    @Nullable
+    private static String getSearchContent(NotificationEvent event) {
+        event.decodeExtras(BIG_TEXT | TEXT_LINES | MESSAGES);
+        StringBuilder content = new StringBuilder();
+        if (event.getBigText() != null) {
+            content.append(event.getBigText());
+        }
+        for (CharSequence line : event.getTextLines()) {
+            content.append('\n').append(line);
+        }
+        for (CharSequence message : event.getMessages()) {
+            content.append('\n').append(message);
+        }
+        return content.length() > 0 ? content.toString() : null;
+    }
+
+    private static void checkBatch(long window, TimeUnit unit, int maxSize) {
+        checkNotNull(unit, "unit == null");
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be > 0");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+    }
+
     private List<StatusBarNotification> getActiveNotificationsInternal() {
+        if (activeNotifications.isSeeded() && activeNotifications.isRetainingNotifications()) {
+            return activeNotifications.snapshot();
+        } else {
+            return queryActiveNotifications();
+        }
+    }
+
+    private List<StatusBarNotification> queryActiveNotifications() {
         List<StatusBarNotification> notifications = new ArrayList<>();
-        StatusBarNotification[] activeNotifications = service.getActiveNotifications();
-        if (activeNotifications != null) {
-            notifications.addAll(Arrays.asList(activeNotifications));
+        StatusBarNotification[] statusBarNotifications = service.getMatchingActiveNotifications();
+        if (statusBarNotifications != null) {
+            notifications.addAll(Arrays.asList(statusBarNotifications));
         }
 
         return notifications;
@@ -145,24 +597,163 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
     @CheckResult @NonNull
     @Override
     public Flowable<NotificationEvent> observeNotificationEvents() {
-        return notificationEventsSubject;
+        return config.getNotificationEventsBackpressure()
+                .apply(notificationEventsSubject, droppedNotificationEvents);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<NotificationEvent> observeNotificationEvents(long afterSequence) {
+        return config.getNotificationEventsBackpressure()
+                .apply(replay(notificationEventsSubject, notificationEventReplay, afterSequence),
+                        droppedNotificationEvents);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Single<Long> getLatestEventSequence() {
+        return Single.fromCallable(eventSequence::get);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Single<FilterStats> getFilterStats() {
+        return Single.fromCallable(service::getFilterStats);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Single<List<RuleStats>> getRuleStats() {
+        return Single.fromCallable(() -> {
+            List<RuleIndex.CompiledRule> rules = RxNotifications.getRuleIndex().getRules();
+            List<RuleStats> stats = new ArrayList<>(rules.size());
+            for (RuleIndex.CompiledRule rule : rules) {
+                stats.add(rule.getStats());
+            }
+            return stats;
+        });
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<List<PackageStats>> observePackageStats(@PackageStats.StatsWindow int window) {
+        if (window < WINDOW_MINUTE || window > WINDOW_DAY) {
+            throw new IllegalArgumentException("unknown window " + window);
+        }
+        return Flowable.interval(0, packageStats.getBucketMillis(window), TimeUnit.MILLISECONDS)
+                .onBackpressureLatest()
+                .map(tick -> packageStats.snapshot(window));
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<List<NotificationEvent>> observeNotificationEventsBatched(long window,
+                                                                             @NonNull TimeUnit unit,
+                                                                             int maxSize) {
+        checkBatch(window, unit, maxSize);
+        return config.getNotificationEventsBackpressure()
+                .apply(notificationEventBatchers.observe(unit.toMillis(window), maxSize), droppedNotificationEvents);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<NotificationEvent> observeNotification(@NonNull String key) {
+        checkNotNull(key, "key == null");
+        return config.getNotificationEventsBackpressure()
+                .apply(eventRouter.observeKey(key), droppedNotificationEvents);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<NotificationEvent> observePackage(@NonNull String pkg) {
+        checkNotNull(pkg, "pkg == null");
+        return config.getNotificationEventsBackpressure()
+                .apply(eventRouter.observePackage(pkg), droppedNotificationEvents);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Flowable<NotificationEvent> observeChannel(@NonNull String pkg, @NonNull String channelId) {
+        checkNotNull(pkg, "pkg == null");
+        checkNotNull(channelId, "channelId == null");
+        return config.getNotificationEventsBackpressure()
+                .apply(eventRouter.observeChannel(pkg, channelId), droppedNotificationEvents);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Single<Long> getDroppedNotificationEvents() {
+        return Single.fromCallable(droppedNotificationEvents::get);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Single<Long> getSuppressedNotificationEvents() {
+        return Single.fromCallable(fingerprints::getSuppressed);
     }
 
     @CheckResult @NonNull
     @Override
     public Flowable<List<StatusBarNotification>> observeActiveNotifications() {
-        return activeNotificationsSubject;
+        if (activeNotifications.isRetainingNotifications()) {
+            return activeNotificationsSubject;
+        } else {
+            // nothing heavy is kept in memory so we have to ask the system
+            return queriedActiveNotifications;
+        }
     }
 
     @CheckResult @NonNull
     @Override
-    public Single<List<StatusBarNotification>> getActiveNotifications() {
-        List<StatusBarNotification> notifications = new ArrayList<>();
-        StatusBarNotification[] activeNotifications = service.getActiveNotifications();
-        if (activeNotifications != null) {
-            notifications.addAll(Arrays.asList(activeNotifications));
+    public Flowable<List<StatusBarNotification>> observeRankedNotifications() {
+        if (activeNotifications.isRetainingNotifications()) {
+            return rankedNotificationsSubject;
+        } else {
+            return queriedActiveNotifications
+                    .map(notifications -> sortByRank(new ArrayList<>(notifications)));
         }
-        return Single.just(notifications);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<List<NotificationSnapshot>> observeActiveNotificationSnapshots() {
+        return activeNotificationsVersionSubject.map(version -> activeNotifications.snapshots());
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<NotificationSnapshotEvent> observeNotificationSnapshotEvents() {
+        return config.getNotificationEventsBackpressure()
+                .apply(notificationSnapshotEventsSubject, droppedNotificationEvents);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<ActiveNotificationChanges> observeActiveNotificationChanges() {
+        // every change is needed to keep a mirror of the active notifications in sync
+        return activeNotificationChangesSubject.onBackpressureBuffer();
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<ActiveNotificationChanges> snapshotAndChanges() {
+        return Flowable.defer(() -> {
+            // subscribe before taking the snapshot so no change gets lost in between
+            UnicastProcessor<ActiveNotificationChanges> changes = UnicastProcessor.create();
+            Disposable disposable = observeActiveNotificationChanges().subscribe(changes::onNext);
+            ActiveNotificationChanges snapshot = getSnapshotChanges();
+            return changes
+                    .filter(change -> change.getVersion() > snapshot.getVersion())
+                    .startWith(snapshot)
+                    .doFinally(disposable::dispose);
+        });
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Single<List<StatusBarNotification>> getActiveNotifications() {
+        return Single.just(getActiveNotificationsInternal());
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -186,48 +777,44 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
     @CheckResult @NonNull
     @Override
     public Completable cancelNotifications(@NonNull final List<StatusBarNotification> statusBarNotification) {
+        return cancelNotifications(statusBarNotification, PRIORITY_USER);
+    }
 
-        return Completable.fromCallable(() -> {
-            for (StatusBarNotification sbn : statusBarNotification) {
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    service.cancelNotification(sbn.getKey());
-                } else {
-                    service.cancelNotification(sbn.getPackageName(), sbn.getTag(), sbn.getId());
-                }
-            }
-            return new Object();
-        });
+    @CheckResult @NonNull
+    @Override
+    public Completable cancelNotifications(@NonNull List<StatusBarNotification> statusBarNotification,
+                                           @CommandPriority int priority) {
+        checkNotNull(statusBarNotification, "statusBarNotification == null");
+        return commandQueue.cancel(statusBarNotification, priority);
     }
 
     @CheckResult @NonNull
     @Override
     public Completable cancelAllNotifications() {
-        return Completable.fromCallable(() -> {
-            service.cancelAllNotifications();
-            return new Object();
-        });
+        return commandQueue.cancelAll();
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.M)
+    @RequiresApi(api = Build.VERSION_CODES.O)
     @CheckResult @NonNull
     @Override
     public Completable setNotificationShown(@NonNull StatusBarNotification sbn) {
         return setNotificationsShown(Collections.singletonList(sbn));
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.M)
+    @RequiresApi(api = Build.VERSION_CODES.O)
     @CheckResult @NonNull
     @Override
     public Completable setNotificationsShown(@NonNull final List<StatusBarNotification> sbns) {
-        checkNotNull(sbns, "sbn == null");
-        return Completable.fromCallable(() -> {
-            String[] keys = new String[]{};
-            for (int i = 0; i < sbns.size(); i++) {
-                keys[i] = sbns.get(i).getKey();
-            }
-            service.setNotificationsShown(keys);
-            return new Object();
-        });
+        return setNotificationsShown(sbns, PRIORITY_USER);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Completable setNotificationsShown(@NonNull List<StatusBarNotification> sbns,
+                                             @CommandPriority int priority) {
+        checkNotNull(sbns, "sbns == null");
+        return commandQueue.setShown(sbns, priority);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -241,20 +828,58 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
     @CheckResult @NonNull
     @Override
     public Completable snoozeNotifications(@NonNull final List<StatusBarNotification> sbns, final long duration) {
+        return snoozeNotifications(sbns, duration, PRIORITY_USER);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Completable snoozeNotifications(@NonNull List<StatusBarNotification> sbns,
+                                           long duration,
+                                           @CommandPriority int priority) {
         checkNotNull(sbns, "sbns == null");
-        return Completable.fromCallable(() -> {
-            for (StatusBarNotification sbn : sbns) {
-                service.snoozeNotification(sbn.getKey(), duration);
-            }
-            return new Object();
-        });
+        return commandQueue.snooze(sbns, duration, priority);
+    }
+
+    @CheckResult @NonNull
+    @Override
+    public Flowable<CommandBatch> observeCommandBatches() {
+        return commandBatcher.observeBatches();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
     @CheckResult @NonNull
     @Override
     public Flowable<ChannelEvent> observeChannelEvents() {
-        return channelEventsSubject;
+        return config.getChannelEventsBackpressure()
+                .apply(channelEventsSubject, droppedChannelEvents);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Flowable<ChannelEvent> observeChannelEvents(long afterSequence) {
+        return config.getChannelEventsBackpressure()
+                .apply(replay(channelEventsSubject, channelEventReplay, afterSequence),
+                        droppedChannelEvents);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Flowable<List<ChannelEvent>> observeChannelEventsBatched(long window,
+                                                                   @NonNull TimeUnit unit,
+                                                                   int maxSize) {
+        checkBatch(window, unit, maxSize);
+        return config.getChannelEventsBackpressure()
+                .apply(channelEventBatchers.observe(unit.toMillis(window), maxSize), droppedChannelEvents);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Single<Long> getDroppedChannelEvents() {
+        return Single.fromCallable(droppedChannelEvents::get);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -263,7 +888,14 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
     public Single<List<NotificationChannel>> getNotificationChannels(@NonNull String pkg, @NonNull UserHandle user) {
         checkNotNull(pkg, "pkg == null");
         checkNotNull(user, "userHandle == null");
-        return Single.just(service.getNotificationChannels(pkg, user));
+        return Single.just(channelRegistry.getChannels(pkg, user));
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Single<CacheStats> getChannelRegistryStats() {
+        return Single.fromCallable(channelRegistry::getStats);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -275,9 +907,12 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
         checkNotNull(pkg, "pkg == null");
         checkNotNull(user, "userHandle == null");
         checkNotNull(channel, "channel == null");
-        return Completable.fromCallable(() -> {
-            service.updateNotificationChannel(pkg, user, channel);
-            return new Object();
+        return commandQueue.action(() -> {
+            try {
+                service.updateNotificationChannel(pkg, user, channel);
+            } finally {
+                channelRegistry.invalidate(pkg, user);
+            }
         });
     }
 
@@ -285,7 +920,35 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
     @CheckResult @NonNull
     @Override
     public Flowable<ChannelGroupEvent> observeChannelGroupEvents() {
-        return channelGroupEventsSubject;
+        return config.getChannelGroupEventsBackpressure()
+                .apply(channelGroupEventsSubject, droppedChannelGroupEvents);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Flowable<ChannelGroupEvent> observeChannelGroupEvents(long afterSequence) {
+        return config.getChannelGroupEventsBackpressure()
+                .apply(replay(channelGroupEventsSubject, channelGroupEventReplay, afterSequence),
+                        droppedChannelGroupEvents);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Flowable<List<ChannelGroupEvent>> observeChannelGroupEventsBatched(long window,
+                                                                             @NonNull TimeUnit unit,
+                                                                             int maxSize) {
+        checkBatch(window, unit, maxSize);
+        return config.getChannelGroupEventsBackpressure()
+                .apply(channelGroupEventBatchers.observe(unit.toMillis(window), maxSize), droppedChannelGroupEvents);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    @Override
+    public Single<Long> getDroppedChannelGroupEvents() {
+        return Single.fromCallable(droppedChannelGroupEvents::get);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -295,7 +958,7 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
                                                                                @NonNull UserHandle user) {
         checkNotNull(pkg, "pkg == null");
         checkNotNull(user, "userHandle == null");
-        return Single.just(service.getNotificationChannelGroups(pkg, user));
+        return Single.just(channelRegistry.getChannelGroups(pkg, user));
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
@@ -316,10 +979,7 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
     @CheckResult @NonNull
     @Override
     public Completable requestInterruptionFilter(final int interruptionFilter) {
-        return Completable.fromCallable(() -> {
-            service.requestInterruptionFilter(interruptionFilter);
-            return new Object();
-        });
+        return commandQueue.requestInterruptionFilter(interruptionFilter);
     }
 
     @CheckResult @NonNull
@@ -339,10 +999,7 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
     @CheckResult @NonNull
     @Override
     public Completable requestListenerHints(final int hints) {
-        return Completable.fromCallable(() -> {
-            service.requestListenerHints(hints);
-            return new Object();
-        });
+        return commandQueue.requestListenerHints(hints);
     }
 
     @CheckResult @NonNull
@@ -351,6 +1008,14 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
         return rankingSubject;
     }
 
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    @CheckResult @NonNull
+    @Override
+    public Flowable<List<NotificationRanking>> observeRankingChanges() {
+        // the changes are deltas so dropping some would leave subscribers with stale rankings
+        return rankingChangesSubject.onBackpressureBuffer();
+    }
+
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     @CheckResult @NonNull
     @Override
@@ -358,4 +1023,13 @@ class RealNotificationListener implements RxNotificationListener, RxNotification
         return Single.just(service.getCurrentRanking());
     }
 
+    @NonNull
+    @Override
+    public HistoryJournal getHistory() {
+        if (history == null) {
+            throw new IllegalStateException("history is disabled");
+        }
+        return history;
+    }
+
 }
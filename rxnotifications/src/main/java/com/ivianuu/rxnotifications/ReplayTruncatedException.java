@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+/**
+ * Signals that events after the requested sequence were already evicted from the replay buffer
+ * or that the sequence is from a previous listener instance
+ *
+ * Subscribers should reload the full state instead of relying on the replayed events.
+ */
+public final class ReplayTruncatedException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long afterSequence;
+    private final long oldestSequence;
+
+    ReplayTruncatedException(long afterSequence, long oldestSequence) {
+        super("events after sequence " + afterSequence + " are not available anymore, oldest buffered sequence is " + oldestSequence);
+        this.afterSequence = afterSequence;
+        this.oldestSequence = oldestSequence;
+    }
+
+    /**
+     * Returns the sequence after which the events were requested
+     */
+    public long getAfterSequence() {
+        return afterSequence;
+    }
+
+    /**
+     * Returns the sequence of the oldest buffered event or 0 if nothing is buffered
+     */
+    public long getOldestSequence() {
+        return oldestSequence;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TEXT;
+import static com.ivianuu.rxnotifications.NotificationEvent.ExtrasField.TITLE;
+
+/**
+ * The registered notification rules indexed by package and channel
+ *
+ * Rules without a package or channel are kept in a wildcard bucket of the respective level
+ * so a lookup only touches the rules which can match at all.
+ */
+final class RuleIndex {
+
+    static final RuleIndex EMPTY = compile(Collections.emptyList());
+
+    private final List<CompiledRule> rules;
+    private final Map<String, Bucket> packageBuckets = new HashMap<>();
+    private final Bucket anyPackageBucket = new Bucket();
+
+    private RuleIndex(List<CompiledRule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Indexes the rules, the counters of the compiled rules are shared with previous indexes
+     */
+    @NonNull
+    static RuleIndex compile(@NonNull List<CompiledRule> rules) {
+        RuleIndex index = new RuleIndex(Collections.unmodifiableList(new ArrayList<>(rules)));
+        for (CompiledRule rule : rules) {
+            String packageName = rule.rule.getPackageName();
+            Bucket bucket;
+            if (packageName == null) {
+                bucket = index.anyPackageBucket;
+            } else {
+                bucket = index.packageBuckets.get(packageName);
+                if (bucket == null) {
+                    bucket = new Bucket();
+                    index.packageBuckets.put(packageName, bucket);
+                }
+            }
+            bucket.add(rule);
+        }
+        return index;
+    }
+
+    /**
+     * Returns whether no rules are registered
+     */
+    boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Returns all rules in registration order
+     */
+    @NonNull
+    List<CompiledRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Adds the rules which match the package and channel to the candidates
+     */
+    void collectCandidates(@NonNull String packageName,
+                           @Nullable String channelId,
+                           @NonNull List<CompiledRule> candidates) {
+        Bucket bucket = packageBuckets.get(packageName);
+        if (bucket != null) {
+            bucket.collect(channelId, candidates);
+        }
+        anyPackageBucket.collect(channelId, candidates);
+    }
+
+    /**
+     * A registered rule and its counters
+     */
+    static final class CompiledRule {
+
+        final NotificationRule rule;
+
+        private final AtomicLong evaluations = new AtomicLong();
+        private final AtomicLong matches = new AtomicLong();
+        private final AtomicLong evaluationTimeNanos = new AtomicLong();
+
+        CompiledRule(@NonNull NotificationRule rule) {
+            this.rule = rule;
+        }
+
+        /**
+         * Returns whether the already package and channel matched notification matches the text pattern
+         */
+        boolean evaluate(@NonNull NotificationEvent event) {
+            long start = System.nanoTime();
+            boolean matches = matchesText(event);
+            evaluationTimeNanos.addAndGet(System.nanoTime() - start);
+            evaluations.incrementAndGet();
+            if (matches) {
+                this.matches.incrementAndGet();
+            }
+            return matches;
+        }
+
+        @NonNull
+        RuleStats getStats() {
+            return new RuleStats(rule, evaluations.get(), matches.get(), evaluationTimeNanos.get());
+        }
+
+        private boolean matchesText(NotificationEvent event) {
+            Pattern pattern = rule.getTextPattern();
+            if (pattern == null) {
+                return true;
+            }
+
+            event.decodeExtras(TITLE | TEXT);
+            CharSequence title = event.getTitle();
+            if (title != null && pattern.matcher(title).find()) {
+                return true;
+            }
+            CharSequence text = event.getText();
+            return text != null && pattern.matcher(text).find();
+        }
+    }
+
+    private static final class Bucket {
+
+        private final Map<String, List<CompiledRule>> channelRules = new HashMap<>();
+        private final List<CompiledRule> anyChannelRules = new ArrayList<>();
+
+        private void add(CompiledRule rule) {
+            String channelId = rule.rule.getChannelId();
+            if (channelId == null) {
+                anyChannelRules.add(rule);
+                return;
+            }
+
+            List<CompiledRule> rules = channelRules.get(channelId);
+            if (rules == null) {
+                rules = new ArrayList<>();
+                channelRules.put(channelId, rules);
+            }
+            rules.add(rule);
+        }
+
+        private void collect(String channelId, List<CompiledRule> candidates) {
+            if (channelId != null && !channelRules.isEmpty()) {
+                List<CompiledRule> rules = channelRules.get(channelId);
+                if (rules != null) {
+                    candidates.addAll(rules);
+                }
+            }
+            candidates.addAll(anyChannelRules);
+        }
+    }
+}
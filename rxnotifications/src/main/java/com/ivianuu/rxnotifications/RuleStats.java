@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Counters of a registered notification rule
+ */
+public final class RuleStats {
+
+    private final NotificationRule rule;
+    private final long evaluations;
+    private final long matches;
+    private final long evaluationTimeNanos;
+
+    RuleStats(@NonNull NotificationRule rule, long evaluations, long matches, long evaluationTimeNanos) {
+        this.rule = rule;
+        this.evaluations = evaluations;
+        this.matches = matches;
+        this.evaluationTimeNanos = evaluationTimeNanos;
+    }
+
+    /**
+     * Returns the rule
+     */
+    @NonNull
+    public NotificationRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Returns how often the rule was checked against a notification which passed the package and channel index
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Returns how often the rule matched a notification
+     */
+    public long getMatches() {
+        return matches;
+    }
+
+    /**
+     * Returns the total time spent checking the rule
+     */
+    public long getEvaluationTimeNanos() {
+        return evaluationTimeNanos;
+    }
+}
@@ -26,7 +26,10 @@ import android.support.annotation.CheckResult;
 import android.support.annotation.NonNull;
 import android.support.annotation.RequiresApi;
 
+import com.ivianuu.rxnotifications.history.HistoryJournal;
+
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
@@ -60,12 +63,112 @@ public interface RxNotificationListener {
     @CheckResult @NonNull
     Flowable<NotificationEvent> observeNotificationEvents();
 
+    /**
+     * Replays the buffered notification events with a sequence greater than the provided one and emits new events afterwards
+     * Fails with a {@link ReplayTruncatedException} if events after the sequence were evicted already or never buffered
+     */
+    @CheckResult @NonNull
+    Flowable<NotificationEvent> observeNotificationEvents(long afterSequence);
+
+    /**
+     * Returns the sequence number of the latest event of any type
+     */
+    @CheckResult @NonNull
+    Single<Long> getLatestEventSequence();
+
+    /**
+     * Returns the counts of notification callbacks which passed or were dropped by the registered filters
+     */
+    @CheckResult @NonNull
+    Single<FilterStats> getFilterStats();
+
+    /**
+     * Returns the match counts and evaluation times of the registered rules
+     */
+    @CheckResult @NonNull
+    Single<List<RuleStats>> getRuleStats();
+
+    /**
+     * Emits the notification counts per package within the window
+     * A new snapshot is emitted whenever the oldest bucket of the window expires, which is every second for the minute window
+     */
+    @CheckResult @NonNull
+    Flowable<List<PackageStats>> observePackageStats(@PackageStats.StatsWindow int window);
+
+    /**
+     * Emits the notification events in batches which are emitted after the window or when max size events were collected
+     */
+    @CheckResult @NonNull
+    Flowable<List<NotificationEvent>> observeNotificationEventsBatched(long window, @NonNull TimeUnit unit, int maxSize);
+
+    /**
+     * Emits the notification events of the notification with the key
+     */
+    @CheckResult @NonNull
+    Flowable<NotificationEvent> observeNotification(@NonNull String key);
+
+    /**
+     * Emits the notification events of the package
+     */
+    @CheckResult @NonNull
+    Flowable<NotificationEvent> observePackage(@NonNull String pkg);
+
+    /**
+     * Emits the notification events of the channel of the package
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Flowable<NotificationEvent> observeChannel(@NonNull String pkg, @NonNull String channelId);
+
+    /**
+     * Returns the count of notification events which were dropped because of backpressure
+     */
+    @CheckResult @NonNull
+    Single<Long> getDroppedNotificationEvents();
+
+    /**
+     * Returns the count of posted events which were suppressed because the content didn't change
+     */
+    @CheckResult @NonNull
+    Single<Long> getSuppressedNotificationEvents();
+
     /**
      * Emits on active notification changes
      */
     @CheckResult @NonNull
     Flowable<List<StatusBarNotification>> observeActiveNotifications();
 
+    /**
+     * Emits the active notifications ordered by their rank on active notification or ranking changes
+     */
+    @CheckResult @NonNull
+    Flowable<List<StatusBarNotification>> observeRankedNotifications();
+
+    /**
+     * Emits slim snapshots of the active notifications on active notification changes
+     */
+    @CheckResult @NonNull
+    Flowable<List<NotificationSnapshot>> observeActiveNotificationSnapshots();
+
+    /**
+     * Emits a slim snapshot when a notification was posted or removed
+     */
+    @CheckResult @NonNull
+    Flowable<NotificationSnapshotEvent> observeNotificationSnapshotEvents();
+
+    /**
+     * Emits the added, updated and removed notifications on every active notification change
+     * Changes are buffered for slow subscribers so none of them gets lost
+     */
+    @CheckResult @NonNull
+    Flowable<ActiveNotificationChanges> observeActiveNotificationChanges();
+
+    /**
+     * Emits a snapshot of the active notifications followed by all later changes
+     */
+    @CheckResult @NonNull
+    Flowable<ActiveNotificationChanges> snapshotAndChanges();
+
     /**
      * Returns current active notifications
      */
@@ -91,6 +194,13 @@ public interface RxNotificationListener {
     @CheckResult @NonNull
     Completable cancelNotifications(@NonNull List<StatusBarNotification> statusBarNotification);
 
+    /**
+     * Cancels the provided notifications in the priority lane
+     */
+    @CheckResult @NonNull
+    Completable cancelNotifications(@NonNull List<StatusBarNotification> statusBarNotification,
+                                    @CommandPriority int priority);
+
     /**
      * Cancels all notifications
      */
@@ -109,6 +219,13 @@ public interface RxNotificationListener {
     @CheckResult @NonNull
     Completable setNotificationsShown(@NonNull List<StatusBarNotification> sbns);
 
+    /**
+     * Sets the notifications as shown in the priority lane
+     */
+    @CheckResult @NonNull
+    Completable setNotificationsShown(@NonNull List<StatusBarNotification> sbns,
+                                      @CommandPriority int priority);
+
     /**
      * Snoozes the notification for the desired duration
      */
@@ -121,6 +238,20 @@ public interface RxNotificationListener {
     @CheckResult @NonNull
     Completable snoozeNotifications(@NonNull List<StatusBarNotification> sbns, long duration);
 
+    /**
+     * Snoozes the notifications for the desired duration in the priority lane
+     */
+    @CheckResult @NonNull
+    Completable snoozeNotifications(@NonNull List<StatusBarNotification> sbns,
+                                    long duration,
+                                    @CommandPriority int priority);
+
+    /**
+     * Emits every batch of cancel, snooze or shown commands which was sent to the system
+     */
+    @CheckResult @NonNull
+    Flowable<CommandBatch> observeCommandBatches();
+
     // CHANNELS
 
     /**
@@ -130,12 +261,41 @@ public interface RxNotificationListener {
     @CheckResult @NonNull
     Flowable<ChannelEvent> observeChannelEvents();
 
+    /**
+     * Replays the buffered channel events with a sequence greater than the provided one and emits new events afterwards
+     * Fails like {@link #observeNotificationEvents(long)} if the requested events are not available anymore
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Flowable<ChannelEvent> observeChannelEvents(long afterSequence);
+
+    /**
+     * Emits the channel events in batches which are emitted after the window or when max size events were collected
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Flowable<List<ChannelEvent>> observeChannelEventsBatched(long window, @NonNull TimeUnit unit, int maxSize);
+
+    /**
+     * Returns the count of channel events which were dropped because of backpressure
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Single<Long> getDroppedChannelEvents();
+
     /**
      * Returns all notifications channels from the package by the user
      */
     @CheckResult @NonNull
     Single<List<NotificationChannel>> getNotificationChannels(@NonNull String pkg, @NonNull UserHandle user);
 
+    /**
+     * Returns the hit and miss counters of the cached channels and channel groups
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Single<CacheStats> getChannelRegistryStats();
+
     /**
      * Updates the notification channel
      */
@@ -151,6 +311,28 @@ public interface RxNotificationListener {
     @CheckResult @NonNull
     Flowable<ChannelGroupEvent> observeChannelGroupEvents();
 
+    /**
+     * Replays the buffered channel group events with a sequence greater than the provided one and emits new events afterwards
+     * Fails like {@link #observeNotificationEvents(long)} if the requested events are not available anymore
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Flowable<ChannelGroupEvent> observeChannelGroupEvents(long afterSequence);
+
+    /**
+     * Emits the channel group events in batches which are emitted after the window or when max size events were collected
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Flowable<List<ChannelGroupEvent>> observeChannelGroupEventsBatched(long window, @NonNull TimeUnit unit, int maxSize);
+
+    /**
+     * Returns the count of channel group events which were dropped because of backpressure
+     */
+    @RequiresApi(api = Build.VERSION_CODES.O)
+    @CheckResult @NonNull
+    Single<Long> getDroppedChannelGroupEvents();
+
     /**
      * Returns the notification channel groups for the package by the user
      */
@@ -208,10 +390,28 @@ public interface RxNotificationListener {
     @CheckResult @NonNull
     Flowable<NotificationListenerService.RankingMap> observeRanking();
 
+    /**
+     * Emits the rankings of the notifications whose ranking fields changed
+     * Notifications which left the ranking are emitted as removed rankings
+     * Changes are buffered for slow subscribers so none of them gets lost
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    @CheckResult @NonNull
+    Flowable<List<NotificationRanking>> observeRankingChanges();
+
     /**
      * Returns the current ranking
      */
     @CheckResult @NonNull
     Single<NotificationListenerService.RankingMap> getRanking();
 
+    // HISTORY
+
+    /**
+     * Returns the journal of all posted and removed notifications
+     * Throws an illegal state exception if the history is disabled
+     */
+    @NonNull
+    HistoryJournal getHistory();
+
 }
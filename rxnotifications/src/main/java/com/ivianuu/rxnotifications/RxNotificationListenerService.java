@@ -21,14 +21,24 @@ import android.app.NotificationChannel;
 import android.app.NotificationChannelGroup;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.os.UserHandle;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.ivianuu.rxserviceconnection.RxBinder;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Rx notification listener service
  */
@@ -37,11 +47,12 @@ public final class RxNotificationListenerService extends NotificationListenerSer
     private static final String EXTRA_BIND_INTERNALLY = "bind_internally";
 
     interface ServiceCallbacks {
-        void onNotificationPosted(@NonNull StatusBarNotification sbn);
-        void onNotificationRemoved(@NonNull StatusBarNotification sbn);
+        // received nanos are the elapsed realtime at which the service got the callback
+        void onNotificationPosted(@NonNull StatusBarNotification sbn, @Nullable RankingMap rankingMap, long receivedNanos);
+        void onNotificationRemoved(@NonNull StatusBarNotification sbn, @Nullable RankingMap rankingMap, long receivedNanos);
         void onListenerConnectionChanged(boolean connected);
-        void onNotificationChannelModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannel channel, int modificationType);
-        void onNotificationChannelGroupModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannelGroup group, int modificationType);
+        void onNotificationChannelModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannel channel, int modificationType, long receivedNanos);
+        void onNotificationChannelGroupModified(@NonNull String pkg, @NonNull UserHandle user, @NonNull NotificationChannelGroup group, int modificationType, long receivedNanos);
         void onNotificationRankingUpdate(@NonNull RankingMap rankingMap);
         void onInterruptionFilterChanged(int interruptionFilter);
         void onListenerHintsChanged(int hints);
@@ -56,6 +67,15 @@ public final class RxNotificationListenerService extends NotificationListenerSer
     };
 
     private RealNotificationListener notificationListener;
+    private Dispatcher dispatcher;
+    private ServiceCallbacks callbacks;
+
+    private final AtomicLong matchedNotifications = new AtomicLong();
+    private final AtomicLong rejectedNotifications = new AtomicLong();
+    // keys of the delivered notifications while filters are registered
+    private final Set<String> admittedKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // only used on the main thread by the filter
+    private Ranking filterRanking;
 
     private boolean listenerConnected;
 
@@ -63,7 +83,24 @@ public final class RxNotificationListenerService extends NotificationListenerSer
     public void onCreate() {
         super.onCreate();
 
-        notificationListener = new RealNotificationListener(this);
+        RxNotificationsConfig config = RxNotifications.getConfig();
+        RxNotifications.attachService(this);
+        dispatcher = config.getDispatchMode().createDispatcher();
+        notificationListener = new RealNotificationListener(this, config, dispatcher);
+        if (config.getCoalesceWindowMillis() > 0) {
+            callbacks = new DispatchingServiceCallbacks(dispatcher, new CoalescingServiceCallbacks(
+                    dispatcher, notificationListener, config.getCoalesceWindowMillis()));
+        } else {
+            callbacks = new DispatchingServiceCallbacks(dispatcher, notificationListener);
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        RxNotifications.detachService(this);
+        dispatcher.shutdown();
+        notificationListener.shutdown();
+        super.onDestroy();
     }
 
     @Override
@@ -81,61 +118,163 @@ public final class RxNotificationListenerService extends NotificationListenerSer
     public void onListenerConnected() {
         super.onListenerConnected();
         listenerConnected = true;
-        notificationListener.onListenerConnectionChanged(true);
+        callbacks.onListenerConnectionChanged(true);
     }
 
     @Override
     public void onListenerDisconnected() {
         super.onListenerDisconnected();
         listenerConnected = false;
-        notificationListener.onListenerConnectionChanged(false);
+        callbacks.onListenerConnectionChanged(false);
     }
 
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
+        // only called directly by the system below lollipop
         super.onNotificationPosted(sbn);
-        notificationListener.onNotificationPosted(sbn);
+        dispatchPosted(sbn, null, SystemClock.elapsedRealtimeNanos());
+    }
+
+    @Override
+    public void onNotificationPosted(StatusBarNotification sbn, RankingMap rankingMap) {
+        // the super implementation would call onNotificationPosted(sbn) again
+        dispatchPosted(sbn, rankingMap, SystemClock.elapsedRealtimeNanos());
     }
 
     @Override
     public void onNotificationRemoved(StatusBarNotification sbn) {
+        // only called directly by the system below lollipop
         super.onNotificationRemoved(sbn);
-        notificationListener.onNotificationRemoved(sbn);
+        dispatchRemoved(sbn, null, SystemClock.elapsedRealtimeNanos());
+    }
+
+    @Override
+    public void onNotificationRemoved(StatusBarNotification sbn, RankingMap rankingMap) {
+        // the super implementation would call onNotificationRemoved(sbn) again
+        dispatchRemoved(sbn, rankingMap, SystemClock.elapsedRealtimeNanos());
     }
 
     @SuppressLint("NewApi")
     @Override
     public void onNotificationChannelModified(String pkg, UserHandle user, NotificationChannel channel, int modificationType) {
         super.onNotificationChannelModified(pkg, user, channel, modificationType);
-        notificationListener.onNotificationChannelModified(pkg, user, channel, modificationType);
+        callbacks.onNotificationChannelModified(pkg, user, channel, modificationType,
+                SystemClock.elapsedRealtimeNanos());
     }
 
     @SuppressLint("NewApi")
     @Override
     public void onNotificationChannelGroupModified(String pkg, UserHandle user, NotificationChannelGroup group, int modificationType) {
         super.onNotificationChannelGroupModified(pkg, user, group, modificationType);
-        notificationListener.onNotificationChannelGroupModified(pkg, user, group, modificationType);
+        callbacks.onNotificationChannelGroupModified(pkg, user, group, modificationType,
+                SystemClock.elapsedRealtimeNanos());
     }
 
     @SuppressLint("NewApi")
     @Override
     public void onNotificationRankingUpdate(RankingMap rankingMap) {
         super.onNotificationRankingUpdate(rankingMap);
-        notificationListener.onNotificationRankingUpdate(rankingMap);
+        callbacks.onNotificationRankingUpdate(rankingMap);
     }
 
     @SuppressLint("NewApi")
     @Override
     public void onInterruptionFilterChanged(int interruptionFilter) {
         super.onInterruptionFilterChanged(interruptionFilter);
-        notificationListener.onInterruptionFilterChanged(interruptionFilter);
+        callbacks.onInterruptionFilterChanged(interruptionFilter);
     }
 
     @SuppressLint("NewApi")
     @Override
     public void onListenerHintsChanged(int hints) {
         super.onListenerHintsChanged(hints);
-        notificationListener.onListenerHintsChanged(hints);
+        callbacks.onListenerHintsChanged(hints);
+    }
+
+    /**
+     * Returns the active notifications which match the registered filters
+     */
+    @Nullable
+    StatusBarNotification[] getMatchingActiveNotifications() {
+        StatusBarNotification[] activeNotifications = getActiveNotifications();
+        FilterPredicate predicate = RxNotifications.getFilterPredicate();
+        if (activeNotifications == null || predicate.acceptsAll()) {
+            return activeNotifications;
+        }
+
+        RankingMap rankingMap = null;
+        Ranking ranking = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            rankingMap = getCurrentRanking();
+            ranking = new Ranking();
+        }
+
+        List<StatusBarNotification> matching = new ArrayList<>(activeNotifications.length);
+        for (StatusBarNotification sbn : activeNotifications) {
+            if (predicate.test(sbn, rankingMap, ranking)) {
+                matching.add(sbn);
+                admittedKeys.add(Util.getKey(sbn));
+            } else {
+                admittedKeys.remove(Util.getKey(sbn));
+            }
+        }
+        return matching.toArray(new StatusBarNotification[matching.size()]);
+    }
+
+    /**
+     * Returns the counts of notification callbacks which passed or were dropped by the filters
+     */
+    @NonNull
+    FilterStats getFilterStats() {
+        return new FilterStats(matchedNotifications.get(), rejectedNotifications.get());
+    }
+
+    /**
+     * Re-applies the registered filters to the already delivered notifications
+     */
+    void onFiltersChanged() {
+        if (dispatcher != null) {
+            dispatcher.execute(notificationListener::onFiltersChanged);
+        }
+    }
+
+    private void dispatchPosted(StatusBarNotification sbn, RankingMap rankingMap, long receivedNanos) {
+        FilterPredicate predicate = RxNotifications.getFilterPredicate();
+        if (predicate.acceptsAll()) {
+            matchedNotifications.incrementAndGet();
+            callbacks.onNotificationPosted(sbn, rankingMap, receivedNanos);
+        } else if (matchesFilter(predicate, sbn, rankingMap)) {
+            admittedKeys.add(Util.getKey(sbn));
+            callbacks.onNotificationPosted(sbn, rankingMap, receivedNanos);
+        } else if (admittedKeys.remove(Util.getKey(sbn))) {
+            // an update made a delivered notification stop matching so it leaves the active set
+            callbacks.onNotificationRemoved(sbn, rankingMap, receivedNanos);
+        }
+    }
+
+    private void dispatchRemoved(StatusBarNotification sbn, RankingMap rankingMap, long receivedNanos) {
+        FilterPredicate predicate = RxNotifications.getFilterPredicate();
+        if (predicate.acceptsAll()) {
+            matchedNotifications.incrementAndGet();
+            admittedKeys.remove(Util.getKey(sbn));
+            callbacks.onNotificationRemoved(sbn, rankingMap, receivedNanos);
+            return;
+        }
+
+        // removals of delivered notifications always pass so nothing is left behind
+        boolean admitted = admittedKeys.remove(Util.getKey(sbn));
+        if (matchesFilter(predicate, sbn, rankingMap) || admitted) {
+            callbacks.onNotificationRemoved(sbn, rankingMap, receivedNanos);
+        }
+    }
+
+    private boolean matchesFilter(FilterPredicate predicate, StatusBarNotification sbn, RankingMap rankingMap) {
+        if (rankingMap != null && filterRanking == null) {
+            filterRanking = new Ranking();
+        }
+        boolean matches = predicate.test(sbn, rankingMap, filterRanking);
+        (matches ? matchedNotifications : rejectedNotifications).incrementAndGet();
+        return matches;
     }
 
     boolean isListenerConnected() {
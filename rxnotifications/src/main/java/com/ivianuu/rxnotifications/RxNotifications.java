@@ -23,7 +23,12 @@ import android.support.annotation.NonNull;
 
 import com.ivianuu.rxserviceconnection.RxServiceConnection;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Flowable;
 import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
 
 import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
 
@@ -35,15 +40,35 @@ public final class RxNotifications {
     @SuppressLint("StaticFieldLeak")
     private static RxNotifications instance;
 
+    private static volatile RxNotificationsConfig config = RxNotificationsConfig.DEFAULT;
+
+    @SuppressLint("StaticFieldLeak")
+    private static volatile RxNotificationListenerService runningService;
+
+    private static final List<NotificationFilter> filters = new ArrayList<>();
+    private static volatile FilterPredicate filterPredicate = FilterPredicate.ACCEPT_ALL;
+
+    private static final List<RuleIndex.CompiledRule> rules = new ArrayList<>();
+    private static volatile RuleIndex ruleIndex = RuleIndex.EMPTY;
+
     private Context context;
 
     private RxNotificationListenerService service;
 
+    private Single<List<NotificationSnapshot>> persistedSnapshots;
+
     /**
      * Constructs a new rx notifications instance
      */
     private RxNotifications(@NonNull Context context) {
         this.context = context;
+        if (config.isPersistActiveNotifications()) {
+            // start loading right away so the snapshots are ready before the service is bound
+            persistedSnapshots = Single.fromCallable(() -> ActiveSnapshotStore.load(context))
+                    .subscribeOn(Schedulers.io())
+                    .cache();
+            persistedSnapshots.subscribe();
+        }
     }
 
     public static RxNotifications get(@NonNull Context context) {
@@ -55,6 +80,113 @@ public final class RxNotifications {
         return instance;
     }
 
+    /**
+     * Sets the config of the notification listener
+     * This must be called before the notification listener was requested the first time
+     */
+    public static void setConfig(@NonNull RxNotificationsConfig config) {
+        checkNotNull(config, "config == null");
+        RxNotifications.config = config;
+    }
+
+    /**
+     * Returns the current config
+     */
+    @NonNull
+    public static RxNotificationsConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Registers the filter, notifications are only delivered if they match any registered filter
+     * Filters are checked before any event is created, delivered notifications which stop matching are removed
+     */
+    public static void addFilter(@NonNull NotificationFilter filter) {
+        checkNotNull(filter, "filter == null");
+        synchronized (filters) {
+            filters.add(filter);
+            filterPredicate = FilterPredicate.compile(filters);
+        }
+        notifyFiltersChanged();
+    }
+
+    /**
+     * Unregisters the filter
+     */
+    public static void removeFilter(@NonNull NotificationFilter filter) {
+        checkNotNull(filter, "filter == null");
+        synchronized (filters) {
+            if (!filters.remove(filter)) {
+                return;
+            }
+            filterPredicate = FilterPredicate.compile(filters);
+        }
+        notifyFiltersChanged();
+    }
+
+    /**
+     * Returns the compiled registered filters
+     */
+    @NonNull
+    static FilterPredicate getFilterPredicate() {
+        return filterPredicate;
+    }
+
+    /**
+     * Called by the service so filter changes can be applied to the delivered notifications
+     */
+    static void attachService(@NonNull RxNotificationListenerService service) {
+        runningService = service;
+    }
+
+    static void detachService(@NonNull RxNotificationListenerService service) {
+        if (runningService == service) {
+            runningService = null;
+        }
+    }
+
+    private static void notifyFiltersChanged() {
+        RxNotificationListenerService service = runningService;
+        if (service != null) {
+            service.onFiltersChanged();
+        }
+    }
+
+    /**
+     * Registers the rule which is applied to every subsequently posted notification
+     */
+    public static void addRule(@NonNull NotificationRule rule) {
+        checkNotNull(rule, "rule == null");
+        synchronized (rules) {
+            rules.add(new RuleIndex.CompiledRule(rule));
+            ruleIndex = RuleIndex.compile(rules);
+        }
+    }
+
+    /**
+     * Unregisters the rule
+     */
+    public static void removeRule(@NonNull NotificationRule rule) {
+        checkNotNull(rule, "rule == null");
+        synchronized (rules) {
+            for (int i = 0; i < rules.size(); i++) {
+                if (rules.get(i).rule == rule) {
+                    rules.remove(i);
+                    ruleIndex = RuleIndex.compile(rules);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed registered rules
+     */
+    @NonNull
+    static RuleIndex getRuleIndex() {
+        return ruleIndex;
+    }
+
     /**
      * Returns if we have the notification listener permission
      */
@@ -62,6 +194,26 @@ public final class RxNotifications {
         return Util.hasNotificationListenerPermission(context);
     }
 
+    /**
+     * Emits the slim snapshots of the active notifications
+     * If persisting is enabled the persisted snapshots are emitted as stale snapshots until the listener connected
+     */
+    @CheckResult @NonNull
+    public Flowable<ActiveNotificationSnapshots> observeActiveNotificationSnapshots() {
+        Flowable<ActiveNotificationSnapshots> live = getNotificationListener()
+                .flatMapPublisher(RxNotificationListener::observeActiveNotificationSnapshots)
+                .map(snapshots -> new ActiveNotificationSnapshots(snapshots, false));
+        if (persistedSnapshots == null) {
+            return live;
+        }
+
+        return live.publish(shared -> Flowable.merge(
+                persistedSnapshots.toFlowable()
+                        .map(snapshots -> new ActiveNotificationSnapshots(snapshots, true))
+                        .takeUntil(shared),
+                shared));
+    }
+
     /**
      * Returns the notification listener
      */
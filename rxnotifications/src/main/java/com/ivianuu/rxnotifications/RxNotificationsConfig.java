@@ -0,0 +1,361 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ivianuu.rxnotifications;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.ivianuu.rxnotifications.Preconditions.checkNotNull;
+
+/**
+ * Configuration of the rx notification listener
+ */
+public final class RxNotificationsConfig {
+
+    static final RxNotificationsConfig DEFAULT = new Builder().build();
+
+    private final BackpressureMode notificationEventsBackpressure;
+    private final BackpressureMode channelEventsBackpressure;
+    private final BackpressureMode channelGroupEventsBackpressure;
+    private final DispatchMode dispatchMode;
+    private final int commandBatchSize;
+    private final boolean retainNotifications;
+    private final int channelRegistrySize;
+    private final long coalesceWindowMillis;
+    private final boolean dedupeIdenticalUpdates;
+    private final int replayCapacity;
+    private final long replayMaxAgeMillis;
+    private final boolean persistActiveNotifications;
+    private final long historyMaxSize;
+    private final boolean historySearch;
+
+    private RxNotificationsConfig(@NonNull Builder builder) {
+        this.notificationEventsBackpressure = builder.notificationEventsBackpressure;
+        this.channelEventsBackpressure = builder.channelEventsBackpressure;
+        this.channelGroupEventsBackpressure = builder.channelGroupEventsBackpressure;
+        this.dispatchMode = builder.dispatchMode;
+        this.commandBatchSize = builder.commandBatchSize;
+        this.retainNotifications = builder.retainNotifications;
+        this.channelRegistrySize = builder.channelRegistrySize;
+        this.coalesceWindowMillis = builder.coalesceWindowMillis;
+        this.dedupeIdenticalUpdates = builder.dedupeIdenticalUpdates;
+        this.replayCapacity = builder.replayCapacity;
+        this.replayMaxAgeMillis = builder.replayMaxAgeMillis;
+        this.persistActiveNotifications = builder.persistActiveNotifications;
+        this.historyMaxSize = builder.historyMaxSize;
+        this.historySearch = builder.historySearch;
+    }
+
+    /**
+     * Returns a new builder
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the backpressure mode of the notification events
+     */
+    @NonNull
+    public BackpressureMode getNotificationEventsBackpressure() {
+        return notificationEventsBackpressure;
+    }
+
+    /**
+     * Returns the backpressure mode of the channel events
+     */
+    @NonNull
+    public BackpressureMode getChannelEventsBackpressure() {
+        return channelEventsBackpressure;
+    }
+
+    /**
+     * Returns the backpressure mode of the channel group events
+     */
+    @NonNull
+    public BackpressureMode getChannelGroupEventsBackpressure() {
+        return channelGroupEventsBackpressure;
+    }
+
+    /**
+     * Returns the dispatch mode of the listener callbacks
+     */
+    @NonNull
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    /**
+     * Returns the max count of notification keys which are sent to the system in one call
+     */
+    public int getCommandBatchSize() {
+        return commandBatchSize;
+    }
+
+    /**
+     * Returns whether the full active notifications are kept in memory
+     */
+    public boolean isRetainNotifications() {
+        return retainNotifications;
+    }
+
+    /**
+     * Returns the max count of packages whose channels are cached
+     */
+    public int getChannelRegistrySize() {
+        return channelRegistrySize;
+    }
+
+    /**
+     * Returns the window in which updates of the same notification are coalesced or 0 if disabled
+     */
+    public long getCoalesceWindowMillis() {
+        return coalesceWindowMillis;
+    }
+
+    /**
+     * Returns whether re-posted notifications without content changes are dropped
+     */
+    public boolean isDedupeIdenticalUpdates() {
+        return dedupeIdenticalUpdates;
+    }
+
+    /**
+     * Returns the count of recent events per event type which are kept for replay or 0 if disabled
+     */
+    public int getReplayCapacity() {
+        return replayCapacity;
+    }
+
+    /**
+     * Returns the max age of events which are kept for replay or 0 if unbounded
+     */
+    public long getReplayMaxAgeMillis() {
+        return replayMaxAgeMillis;
+    }
+
+    /**
+     * Returns whether the snapshots of the active notifications are persisted
+     */
+    public boolean isPersistActiveNotifications() {
+        return persistActiveNotifications;
+    }
+
+    /**
+     * Returns the max size in bytes of the notification history or 0 if disabled
+     */
+    public long getHistoryMaxSize() {
+        return historyMaxSize;
+    }
+
+    /**
+     * Returns whether the texts of the notification history are indexed for full text search
+     */
+    public boolean isHistorySearch() {
+        return historySearch;
+    }
+
+    /**
+     * Builds rx notifications configs
+     */
+    public static final class Builder {
+
+        private BackpressureMode notificationEventsBackpressure = BackpressureMode.error();
+        private BackpressureMode channelEventsBackpressure = BackpressureMode.error();
+        private BackpressureMode channelGroupEventsBackpressure = BackpressureMode.error();
+        private DispatchMode dispatchMode = DispatchMode.immediate();
+        private int commandBatchSize = 100;
+        private boolean retainNotifications = true;
+        private int channelRegistrySize = 32;
+        private long coalesceWindowMillis;
+        private boolean dedupeIdenticalUpdates;
+        private int replayCapacity;
+        private long replayMaxAgeMillis;
+        private boolean persistActiveNotifications;
+        private long historyMaxSize;
+        private boolean historySearch;
+
+        private Builder() {}
+
+        /**
+         * Sets the backpressure mode of the notification events
+         */
+        @NonNull
+        public Builder notificationEventsBackpressure(@NonNull BackpressureMode mode) {
+            checkNotNull(mode, "mode == null");
+            this.notificationEventsBackpressure = mode;
+            return this;
+        }
+
+        /**
+         * Sets the backpressure mode of the channel events
+         */
+        @NonNull
+        public Builder channelEventsBackpressure(@NonNull BackpressureMode mode) {
+            checkNotNull(mode, "mode == null");
+            this.channelEventsBackpressure = mode;
+            return this;
+        }
+
+        /**
+         * Sets the backpressure mode of the channel group events
+         */
+        @NonNull
+        public Builder channelGroupEventsBackpressure(@NonNull BackpressureMode mode) {
+            checkNotNull(mode, "mode == null");
+            this.channelGroupEventsBackpressure = mode;
+            return this;
+        }
+
+        /**
+         * Sets the dispatch mode of the listener callbacks
+         */
+        @NonNull
+        public Builder dispatchMode(@NonNull DispatchMode mode) {
+            checkNotNull(mode, "mode == null");
+            this.dispatchMode = mode;
+            return this;
+        }
+
+        /**
+         * Sets the max count of notification keys which are sent to the system in one call
+         */
+        @NonNull
+        public Builder commandBatchSize(int commandBatchSize) {
+            if (commandBatchSize <= 0) {
+                throw new IllegalArgumentException("commandBatchSize must be > 0");
+            }
+            this.commandBatchSize = commandBatchSize;
+            return this;
+        }
+
+        /**
+         * Sets whether the full active notifications are kept in memory
+         * If false only slim snapshots are kept and the full notifications are queried from the system on demand
+         */
+        @NonNull
+        public Builder retainNotifications(boolean retainNotifications) {
+            this.retainNotifications = retainNotifications;
+            return this;
+        }
+
+        /**
+         * Sets the max count of packages whose channels are cached
+         */
+        @NonNull
+        public Builder channelRegistrySize(int channelRegistrySize) {
+            if (channelRegistrySize <= 0) {
+                throw new IllegalArgumentException("channelRegistrySize must be > 0");
+            }
+            this.channelRegistrySize = channelRegistrySize;
+            return this;
+        }
+
+        /**
+         * Sets the window in which updates of the same notification are coalesced
+         * Only the latest update per key within the window is delivered, removals are always delivered
+         */
+        @NonNull
+        public Builder coalesceWindow(long window, @NonNull TimeUnit unit) {
+            checkNotNull(unit, "unit == null");
+            if (window < 0) {
+                throw new IllegalArgumentException("window must be >= 0");
+            }
+            this.coalesceWindowMillis = unit.toMillis(window);
+            return this;
+        }
+
+        /**
+         * Sets whether re-posted notifications without content changes are dropped
+         * The content is compared by a fingerprint of the texts, flags, icon, color, channel and actions
+         */
+        @NonNull
+        public Builder dedupeIdenticalUpdates(boolean dedupeIdenticalUpdates) {
+            this.dedupeIdenticalUpdates = dedupeIdenticalUpdates;
+            return this;
+        }
+
+        /**
+         * Sets the count of recent events per event type which are kept for replay
+         * Late subscribers can replay them by the sequence number they saw last
+         */
+        @NonNull
+        public Builder replayCapacity(int replayCapacity) {
+            if (replayCapacity < 0) {
+                throw new IllegalArgumentException("replayCapacity must be >= 0");
+            }
+            this.replayCapacity = replayCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the max age of events which are kept for replay
+         */
+        @NonNull
+        public Builder replayMaxAge(long maxAge, @NonNull TimeUnit unit) {
+            checkNotNull(unit, "unit == null");
+            if (maxAge < 0) {
+                throw new IllegalArgumentException("maxAge must be >= 0");
+            }
+            this.replayMaxAgeMillis = unit.toMillis(maxAge);
+            return this;
+        }
+
+        /**
+         * Sets whether the snapshots of the active notifications are persisted
+         * The persisted snapshots are emitted as stale snapshots until the listener connected after a cold start
+         */
+        @NonNull
+        public Builder persistActiveNotifications(boolean persistActiveNotifications) {
+            this.persistActiveNotifications = persistActiveNotifications;
+            return this;
+        }
+
+        /**
+         * Sets the max size in bytes of the notification history journal
+         * The oldest records are deleted once the journal exceeds the size, 0 disables the history
+         */
+        @NonNull
+        public Builder historyMaxSize(long historyMaxSize) {
+            if (historyMaxSize < 0) {
+                throw new IllegalArgumentException("historyMaxSize must be >= 0");
+            }
+            this.historyMaxSize = historyMaxSize;
+            return this;
+        }
+
+        /**
+         * Sets whether the texts of the notification history are indexed for full text search
+         * Only has an effect if the history is enabled
+         */
+        @NonNull
+        public Builder historySearch(boolean historySearch) {
+            this.historySearch = historySearch;
+            return this;
+        }
+
+        /**
+         * Returns the config
+         */
+        @NonNull
+        public RxNotificationsConfig build() {
+            return new RxNotificationsConfig(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications;
+
+/**
+ * Event which is stamped with a global and a per type sequence number and its receive time by the listener
+ */
+public interface SequencedEvent {
+
+    /**
+     * Returns the sequence number of this event or 0 if it was not published by the listener
+     * Sequence numbers are increasing monotonically across all event types so the events of one type have gaps
+     */
+    long getSequence();
+
+    /**
+     * Returns the sequence number of this event within the events of its type or 0 if it was not published by the listener
+     * It increases by exactly one per published event of the type so a gap means events were dropped
+     */
+    long getStreamSequence();
+
+    /**
+     * Returns the {@link android.os.SystemClock#elapsedRealtimeNanos()} at which the listener received this event
+     */
+    long getTimestampNanos();
+}
@@ -18,7 +18,10 @@ package com.ivianuu.rxnotifications;
 
 import android.content.ContentResolver;
 import android.content.Context;
+import android.os.Build;
 import android.provider.Settings;
+import android.service.notification.StatusBarNotification;
+import android.support.annotation.NonNull;
 
 /**
  * Utils
@@ -34,4 +37,14 @@ final class Util {
 
         return !(enabledNotificationListeners == null || !enabledNotificationListeners.contains(packageName));
     }
+
+    @NonNull
+    static String getKey(@NonNull StatusBarNotification sbn) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT_WATCH) {
+            return sbn.getKey();
+        } else {
+            // mirrors the platform key format without the user id
+            return sbn.getPackageName() + "|" + sbn.getId() + "|" + sbn.getTag();
+        }
+    }
 }
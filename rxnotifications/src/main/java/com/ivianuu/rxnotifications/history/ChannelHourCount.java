@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Count of posted notifications of one channel within one hour
+ */
+public final class ChannelHourCount {
+
+    private final String packageName;
+    private final String channelId;
+    private final long hourMillis;
+    private final int count;
+
+    ChannelHourCount(@NonNull String packageName,
+                     @Nullable String channelId,
+                     long hourMillis,
+                     int count) {
+        this.packageName = packageName;
+        this.channelId = channelId;
+        this.hourMillis = hourMillis;
+        this.count = count;
+    }
+
+    /**
+     * Returns the package name of the channel
+     */
+    @NonNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the channel id or null for notifications without a channel
+     */
+    @Nullable
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Returns the start of the hour
+     */
+    public long getHourMillis() {
+        return hourMillis;
+    }
+
+    /**
+     * Returns the count of posted notifications
+     */
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * In memory index of the journal which only keeps record ids
+ *
+ * The sparse time index remembers the time of every n-th record so a time range can be
+ * mapped to a range of ids. The postings keep the ids of all records per package.
+ * The index can be saved to a checkpoint file so it doesn't have to be rebuilt from the whole journal.
+ */
+final class HistoryIndex {
+
+    private static final int MAGIC = 0x52584849;
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int TIME_INDEX_INTERVAL = 64;
+
+    private final Map<String, LongList> postings = new HashMap<>();
+    private LongList sparseTimes = new LongList();
+    private LongList sparseIds = new LongList();
+    private int sinceSparseEntry = TIME_INDEX_INTERVAL;
+    private long lastTimeMillis = Long.MIN_VALUE;
+
+    /**
+     * Adds the record which was appended with the id
+     */
+    synchronized void add(long id, @NonNull HistoryRecord record) {
+        LongList ids = postings.get(record.getPackageName());
+        if (ids == null) {
+            ids = new LongList();
+            postings.put(record.getPackageName(), ids);
+        }
+        ids.add(id);
+
+        // journals of older versions can contain records whose time jumped back
+        lastTimeMillis = Math.max(lastTimeMillis, record.getTimeMillis());
+        if (++sinceSparseEntry >= TIME_INDEX_INTERVAL) {
+            sinceSparseEntry = 0;
+            sparseTimes.add(lastTimeMillis);
+            sparseIds.add(id);
+        }
+    }
+
+    /**
+     * Returns the latest time of all added records
+     */
+    synchronized long getLastTimeMillis() {
+        return lastTimeMillis;
+    }
+
+    /**
+     * Drops all ids lower than the min id because their segments were deleted
+     */
+    synchronized void trim(long minId) {
+        Iterator<LongList> iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            LongList ids = iterator.next();
+            ids.dropBefore(ids.lowerBound(minId));
+            if (ids.size() == 0) {
+                iterator.remove();
+            }
+        }
+
+        int sparseStart = sparseIds.lowerBound(minId);
+        sparseIds.dropBefore(sparseStart);
+        sparseTimes.dropBefore(sparseStart);
+    }
+
+    /**
+     * Returns an id before which all records are older than the time
+     */
+    synchronized long getStartId(long fromMillis) {
+        int index = sparseTimes.lowerBound(fromMillis);
+        return index > 0 ? sparseIds.get(index - 1) : 0;
+    }
+
+    /**
+     * Returns an id from which on all records are newer than the time
+     */
+    synchronized long getEndId(long toMillis) {
+        if (toMillis == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        int index = sparseTimes.lowerBound(toMillis + 1);
+        return index < sparseTimes.size() ? sparseIds.get(index) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Copies the next ids of the package which are greater or equal to the start id into the target
+     * and returns the count of copied ids
+     */
+    synchronized int getPostings(@NonNull String packageName, long startId, @NonNull long[] target) {
+        LongList ids = postings.get(packageName);
+        if (ids == null) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int i = ids.lowerBound(startId); i < ids.size() && count < target.length; i++) {
+            target[count++] = ids.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Writes the index to the file as a checkpoint which covers all records before the end id
+     */
+    void save(@NonNull File file, long endId) throws IOException {
+        // only copy the index while holding the lock so queries don't wait for the disk
+        byte[] checkpoint = toByteArray(endId);
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            out.write(checkpoint);
+            // the rename must not become visible before the content is on disk
+            out.getFD().sync();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("couldn't replace " + file);
+        }
+    }
+
+    /**
+     * Replaces the content of the index with the checkpoint of the file
+     * Returns the end id of the checkpoint or -1 if there is no intact checkpoint
+     */
+    synchronized long load(@NonNull File file) {
+        if (!file.exists()) {
+            return -1;
+        }
+
+        long maxCount = file.length() / 8;
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), new CRC32());
+             DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return -1;
+            }
+            long endId = in.readLong();
+            long lastTimeMillis = in.readLong();
+            int sinceSparseEntry = in.readInt();
+            LongList sparseTimes = readLongs(in, maxCount);
+            LongList sparseIds = readLongs(in, maxCount);
+            int packageCount = in.readInt();
+            if (packageCount < 0 || packageCount > maxCount) {
+                return -1;
+            }
+            Map<String, LongList> postings = new HashMap<>();
+            for (int i = 0; i < packageCount; i++) {
+                postings.put(in.readUTF(), readLongs(in, maxCount));
+            }
+            long checksum = checked.getChecksum().getValue();
+            if (in.readLong() != checksum || sparseTimes.size() != sparseIds.size()) {
+                return -1;
+            }
+
+            this.postings.clear();
+            this.postings.putAll(postings);
+            this.sparseTimes = sparseTimes;
+            this.sparseIds = sparseIds;
+            this.sinceSparseEntry = sinceSparseEntry;
+            this.lastTimeMillis = lastTimeMillis;
+            return endId;
+        } catch (IOException | RuntimeException e) {
+            // the index is rebuilt from the journal
+            return -1;
+        }
+    }
+
+    /**
+     * Removes all ids
+     */
+    synchronized void clear() {
+        postings.clear();
+        sparseTimes = new LongList();
+        sparseIds = new LongList();
+        sinceSparseEntry = TIME_INDEX_INTERVAL;
+        lastTimeMillis = Long.MIN_VALUE;
+    }
+
+    private synchronized byte[] toByteArray(long endId) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CheckedOutputStream checked = new CheckedOutputStream(bytes, new CRC32());
+        DataOutputStream out = new DataOutputStream(checked);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(endId);
+        out.writeLong(lastTimeMillis);
+        out.writeInt(sinceSparseEntry);
+        writeLongs(out, sparseTimes);
+        writeLongs(out, sparseIds);
+        out.writeInt(postings.size());
+        for (Map.Entry<String, LongList> entry : postings.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeLongs(out, entry.getValue());
+        }
+        out.writeLong(checked.getChecksum().getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeLongs(DataOutputStream out, LongList values) throws IOException {
+        out.writeInt(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            out.writeLong(values.get(i));
+        }
+    }
+
+    private static LongList readLongs(DataInputStream in, long maxCount) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > maxCount) {
+            throw new IOException("invalid count " + count);
+        }
+        LongList values = new LongList();
+        for (int i = 0; i < count; i++) {
+            values.add(in.readLong());
+        }
+        return values;
+    }
+}
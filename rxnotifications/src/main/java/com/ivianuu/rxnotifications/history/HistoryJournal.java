@@ -0,0 +1,673 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.CheckResult;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+
+import static com.ivianuu.rxnotifications.NotificationEvent.NotificationEventType.NOTIFICATION_POSTED;
+
+/**
+ * Append only journal of history records which is stored in memory mapped segment files
+ *
+ * Records are appended on a background thread in batches and the segments are forced to disk
+ * at most once per commit interval. The oldest segments are deleted once the journal exceeds
+ * its max size. On open the tail of the newest segment is validated by the record checksums
+ * and everything behind the last intact record is discarded.
+ *
+ * Queries are served by an in memory index of record ids which is updated on every append and
+ * checkpointed to disk whenever a segment is full, on open only the records behind the checkpoint
+ * are read again. The records themselves are only read from the segments.
+ * The record times are clamped to never decrease so time ranges can be mapped to id ranges.
+ */
+public final class HistoryJournal {
+
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SEARCH_DIRECTORY = "search";
+    private static final String INDEX_FILE = "index";
+
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+    private static final int MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final long COMMIT_INTERVAL_MILLIS = 1000;
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final File directory;
+    private final File indexFile;
+    private final long maxSize;
+    private final int segmentSize;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "RxNotifications-history"));
+    private final CountDownLatch opened = new CountDownLatch(1);
+
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final HistoryIndex index = new HistoryIndex();
+    private final SearchIndex search;
+    private volatile boolean searchOpened;
+
+    // guarded by pending
+    private final List<PendingRecord> pending = new ArrayList<>();
+    private boolean writeScheduled;
+    private boolean closed;
+
+    // only accessed by the executor
+    private final RecordCodec codec = new RecordCodec();
+    private Segment head;
+    private boolean commitScheduled;
+    private long lastTimeMillis = Long.MIN_VALUE;
+
+    private final Runnable write = this::write;
+    private final Runnable commit = this::commit;
+
+    /**
+     * Opens the journal in the directory which keeps at most max size bytes
+     * The files are opened and recovered in the background
+     */
+    public HistoryJournal(@NonNull File directory, long maxSize) {
+        this(directory, maxSize, false);
+    }
+
+    /**
+     * Opens the journal in the directory which keeps at most max size bytes
+     * and maintains a full text index of the records if searchable is true
+     */
+    public HistoryJournal(@NonNull File directory, long maxSize, boolean searchable) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be > 0");
+        }
+        this.directory = directory;
+        this.indexFile = new File(directory, INDEX_FILE);
+        this.maxSize = maxSize;
+        // keep at least a few segments so deleting the oldest one only drops a fraction of the history
+        this.segmentSize = (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, maxSize / 8));
+        this.search = searchable ? new SearchIndex(new File(directory, SEARCH_DIRECTORY)) : null;
+        executor.execute(this::open);
+    }
+
+    /**
+     * Appends the record asynchronously
+     */
+    public void append(@NonNull HistoryRecord record) {
+        append(record, null);
+    }
+
+    /**
+     * Appends the record asynchronously and indexes the content in addition to the title and text
+     * The content is only searchable but not stored
+     */
+    public void append(@NonNull HistoryRecord record, @Nullable String content) {
+        append(() -> record, content != null ? () -> content : null);
+    }
+
+    /**
+     * Appends the record which is built on the journal thread together with the searchable content
+     * Use this if building the record is expensive, a record which fails to build is skipped
+     * Records which are appended after the journal was closed are dropped
+     */
+    public void append(@NonNull Callable<HistoryRecord> record, @Nullable Callable<String> content) {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            pending.add(new PendingRecord(record, content));
+            if (!writeScheduled) {
+                writeScheduled = true;
+                executor.execute(write);
+            }
+        }
+    }
+
+    /**
+     * Emits all records from the oldest to the newest one
+     * Blocks until the journal was opened
+     */
+    @CheckResult @NonNull
+    public Flowable<HistoryRecord> records() {
+        return Flowable.generate(() -> {
+            opened.await();
+            return new Cursor(new ArrayList<>(segments), 0);
+        }, (cursor, emitter) -> {
+            HistoryRecord record = cursor.next();
+            if (record != null) {
+                emitter.onNext(record);
+            } else {
+                emitter.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Emits the records which match the query in pages from the oldest to the newest one
+     * Only one page is held in memory at a time, the pages are read on demand
+     */
+    @CheckResult @NonNull
+    public Flowable<List<HistoryRecord>> query(@NonNull HistoryQuery query) {
+        if (query == null) {
+            throw new NullPointerException("query == null");
+        }
+        return Flowable.generate(() -> {
+            opened.await();
+            return new QueryCursor(query);
+        }, (cursor, emitter) -> {
+            List<HistoryRecord> page = cursor.nextPage();
+            if (!page.isEmpty()) {
+                emitter.onNext(page);
+            } else {
+                emitter.onComplete();
+            }
+        });
+    }
+
+    /**
+     * Returns the count of posted notifications per channel and hour within the time range
+     */
+    @CheckResult @NonNull
+    public Single<List<ChannelHourCount>> countByChannelPerHour(long fromMillis, long toMillis) {
+        HistoryQuery query = HistoryQuery.builder()
+                .timeRange(fromMillis, toMillis)
+                .pageSize(256)
+                .build();
+        return Single.fromCallable(() -> {
+            opened.await();
+            Map<String, ChannelHourCounter> counters = new LinkedHashMap<>();
+            QueryCursor cursor = new QueryCursor(query);
+            List<HistoryRecord> page;
+            while (!(page = cursor.nextPage()).isEmpty()) {
+                for (HistoryRecord record : page) {
+                    if (record.getEventType() != NOTIFICATION_POSTED) {
+                        continue;
+                    }
+
+                    long hourMillis = record.getTimeMillis() - record.getTimeMillis() % HOUR_MILLIS;
+                    String key = record.getPackageName() + '|' + record.getChannelId() + '|' + hourMillis;
+                    ChannelHourCounter counter = counters.get(key);
+                    if (counter == null) {
+                        counter = new ChannelHourCounter(record.getPackageName(), record.getChannelId(), hourMillis);
+                        counters.put(key, counter);
+                    }
+                    counter.count++;
+                }
+            }
+
+            List<ChannelHourCount> counts = new ArrayList<>(counters.size());
+            for (ChannelHourCounter counter : counters.values()) {
+                counts.add(new ChannelHourCount(counter.packageName, counter.channelId,
+                        counter.hourMillis, counter.count));
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * Returns the records whose texts contain all terms of the query from the newest to the oldest one
+     * Terms which end with a '*' match all words with the prefix
+     */
+    @CheckResult @NonNull
+    public Single<List<HistoryRecord>> search(@NonNull String query, int limit) {
+        if (query == null) {
+            throw new NullPointerException("query == null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be > 0");
+        }
+        if (search == null) {
+            throw new IllegalStateException("journal is not searchable");
+        }
+        return Single.fromCallable(() -> {
+            opened.await();
+            if (!searchOpened) {
+                return Collections.<HistoryRecord>emptyList();
+            }
+
+            RecordCodec codec = new RecordCodec();
+            List<HistoryRecord> records = new ArrayList<>();
+            for (long id : search.search(query, limit)) {
+                // the record might have been deleted since the search
+                HistoryRecord record = read(id, codec);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        });
+    }
+
+    /**
+     * Writes the pending records, forces them to disk and releases the resources
+     */
+    public void close() {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        executor.execute(() -> {
+            write();
+            commit();
+            if (head != null) {
+                checkpoint();
+            }
+            if (searchOpened) {
+                search.close();
+            }
+        });
+        executor.shutdown();
+    }
+
+    private void open() {
+        try {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("couldn't create " + directory);
+            }
+
+            File[] files = directory.listFiles((dir, name) ->
+                    name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+            if (files == null) {
+                throw new IOException("couldn't list " + directory);
+            }
+            Arrays.sort(files);
+
+            for (File file : files) {
+                long index = parseIndex(file.getName());
+                if (index < 0 || file.length() < RecordCodec.MAX_RECORD_SIZE) {
+                    // not written by us or torn while it was created
+                    file.delete();
+                    continue;
+                }
+                Segment segment = map(file, index, (int) file.length());
+                segment.limit = segment.buffer.capacity();
+                segments.add(segment);
+            }
+
+            if (segments.isEmpty()) {
+                head = createSegment(0);
+            } else {
+                head = segments.get(segments.size() - 1);
+                recover(head);
+            }
+
+            // the checkpoint is only valid if the journal still contains all records it covers
+            long checkpointId = index.load(indexFile);
+            if (checkpointId < 0 || checkpointId > head.idOf(head.limit)) {
+                index.clear();
+                checkpointId = 0;
+            }
+            enforceMaxSize();
+
+            long searchIndexedId = Long.MAX_VALUE;
+            if (search != null) {
+                try {
+                    searchIndexedId = search.open();
+                    searchOpened = true;
+                } catch (IOException e) {
+                    // the journal still works without search
+                }
+            }
+
+            // add the records behind the checkpoint to the index, the search index is persisted
+            // separately and only misses the records which were not flushed before a crash
+            long scanId = searchOpened ? Math.min(checkpointId, searchIndexedId + 1) : checkpointId;
+            Cursor cursor = new Cursor(new ArrayList<>(segments), scanId);
+            HistoryRecord record;
+            while ((record = cursor.next()) != null) {
+                if (record.getId() >= checkpointId) {
+                    index.add(record.getId(), record);
+                }
+                if (record.getId() > searchIndexedId) {
+                    search.add(record.getId(), record, null);
+                }
+            }
+            index.trim(segments.get(0).idOf(0));
+            lastTimeMillis = index.getLastTimeMillis();
+            if (searchOpened) {
+                search.trim(segments.get(0).idOf(0));
+            }
+        } catch (IOException e) {
+            // the journal stays empty and drops all records
+            head = null;
+        } finally {
+            opened.countDown();
+        }
+    }
+
+    private void recover(Segment segment) {
+        int position = 0;
+        int size;
+        while ((size = codec.check(segment.buffer, position, segment.buffer.capacity())) > 0) {
+            position += size;
+        }
+
+        // clear the damaged tail so it can never be mistaken for records later
+        for (int i = position; i < segment.buffer.capacity(); i++) {
+            if (segment.buffer.get(i) != 0) {
+                segment.buffer.put(i, (byte) 0);
+            }
+        }
+        segment.limit = position;
+    }
+
+    private void write() {
+        List<PendingRecord> records;
+        synchronized (pending) {
+            writeScheduled = false;
+            records = new ArrayList<>(pending);
+            pending.clear();
+        }
+
+        if (head == null || records.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (PendingRecord pendingRecord : records) {
+                HistoryRecord record = pendingRecord.buildRecord();
+                if (record == null) {
+                    continue;
+                }
+                if (record.getTimeMillis() < lastTimeMillis) {
+                    // the wall clock was set back
+                    record = record.withTimeMillis(lastTimeMillis);
+                }
+                lastTimeMillis = record.getTimeMillis();
+                int size = codec.write(head.buffer, head.limit, record);
+                if (size < 0) {
+                    rotate();
+                    size = codec.write(head.buffer, head.limit, record);
+                }
+                long id = head.idOf(head.limit);
+                head.limit += size;
+                index.add(id, record);
+                if (searchOpened) {
+                    search.add(id, record, pendingRecord.buildContent());
+                }
+            }
+        } catch (IOException e) {
+            head = null;
+            return;
+        }
+
+        // group the disk writes of all appends within the commit interval,
+        // while closing the close task commits right after this write
+        if (!commitScheduled && !executor.isShutdown()) {
+            commitScheduled = true;
+            executor.schedule(commit, COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void commit() {
+        commitScheduled = false;
+        if (head != null) {
+            head.buffer.force();
+        }
+    }
+
+    private void rotate() throws IOException {
+        head.buffer.force();
+        head = createSegment(head.index + 1);
+        enforceMaxSize();
+        checkpoint();
+    }
+
+    private void checkpoint() {
+        try {
+            index.save(indexFile, head.idOf(head.limit));
+        } catch (IOException e) {
+            // the previous checkpoint stays valid, only more records are read on the next open
+        }
+    }
+
+    private void enforceMaxSize() {
+        while (segments.size() > 1 && (long) segments.size() * segmentSize > maxSize) {
+            Segment oldest = segments.remove(0);
+            // readers keep their mapping even if the file is gone
+            oldest.file.delete();
+            index.trim(segments.get(0).idOf(0));
+            if (searchOpened) {
+                search.trim(segments.get(0).idOf(0));
+            }
+        }
+    }
+
+    private Segment createSegment(long index) throws IOException {
+        File file = new File(directory, SEGMENT_PREFIX + String.format("%016x", index) + SEGMENT_SUFFIX);
+        Segment segment = map(file, index, segmentSize);
+        segments.add(segment);
+        return segment;
+    }
+
+    private static Segment map(File file, long index, int size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            if (randomAccessFile.length() != size) {
+                randomAccessFile.setLength(size);
+            }
+            MappedByteBuffer buffer = randomAccessFile.getChannel()
+                    .map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(file, index, buffer);
+        }
+    }
+
+    @Nullable
+    private HistoryRecord read(long id, RecordCodec codec) {
+        long segmentIndex = id >>> 32;
+        int position = (int) id;
+        for (Segment segment : segments) {
+            if (segment.index == segmentIndex) {
+                if (codec.check(segment.buffer, position, segment.limit) == 0) {
+                    return null;
+                }
+                return RecordCodec.read(segment.buffer, position, id);
+            }
+        }
+        // the segment was deleted in the meantime
+        return null;
+    }
+
+    private static long parseIndex(String name) {
+        try {
+            return Long.parseLong(name.substring(
+                    SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()), 16);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static final class Segment {
+
+        final File file;
+        final long index;
+        final MappedByteBuffer buffer;
+        // the end of the appended records, published after every write
+        volatile int limit;
+
+        private Segment(File file, long index, MappedByteBuffer buffer) {
+            this.file = file;
+            this.index = index;
+            this.buffer = buffer;
+        }
+
+        long idOf(int position) {
+            return (index << 32) | position;
+        }
+    }
+
+    private static final class Cursor {
+
+        private final List<Segment> segments;
+        private final RecordCodec codec = new RecordCodec();
+        private int segment;
+        private int position;
+
+        private Cursor(List<Segment> segments, long startId) {
+            this.segments = segments;
+            long startIndex = startId >>> 32;
+            while (segment < segments.size() && segments.get(segment).index < startIndex) {
+                segment++;
+            }
+            if (segment < segments.size() && segments.get(segment).index == startIndex) {
+                position = (int) startId;
+            }
+        }
+
+        private HistoryRecord next() {
+            while (segment < segments.size()) {
+                Segment current = segments.get(segment);
+                int size = codec.check(current.buffer, position, current.limit);
+                if (size > 0) {
+                    HistoryRecord record = RecordCodec.read(current.buffer, position, current.idOf(position));
+                    position += size;
+                    return record;
+                }
+                segment++;
+                position = 0;
+            }
+            return null;
+        }
+    }
+
+    private final class QueryCursor {
+
+        private final HistoryQuery query;
+        private final long endId;
+        private final RecordCodec codec = new RecordCodec();
+        private final Cursor scan;
+        private final long[] ids;
+        private long nextId;
+        private boolean done;
+
+        private QueryCursor(HistoryQuery query) {
+            this.query = query;
+            this.nextId = index.getStartId(query.getFromMillis());
+            this.endId = index.getEndId(query.getToMillis());
+            if (query.getPackageName() != null) {
+                this.scan = null;
+                this.ids = new long[query.getPageSize()];
+            } else {
+                this.scan = new Cursor(new ArrayList<>(segments), nextId);
+                this.ids = null;
+            }
+        }
+
+        private List<HistoryRecord> nextPage() {
+            List<HistoryRecord> page = new ArrayList<>();
+            while (!done && page.size() < query.getPageSize()) {
+                if (scan != null) {
+                    HistoryRecord record = scan.next();
+                    if (record == null || record.getId() >= endId) {
+                        done = true;
+                    } else if (matches(record)) {
+                        page.add(record);
+                    }
+                    continue;
+                }
+
+                // walk the postings of the package instead of the whole journal
+                int count = index.getPostings(query.getPackageName(), nextId, ids);
+                if (count == 0) {
+                    done = true;
+                }
+                for (int i = 0; i < count && page.size() < query.getPageSize(); i++) {
+                    long id = ids[i];
+                    nextId = id + 1;
+                    if (id >= endId) {
+                        done = true;
+                        break;
+                    }
+                    HistoryRecord record = read(id, codec);
+                    if (record != null && matches(record)) {
+                        page.add(record);
+                    }
+                }
+            }
+            return page;
+        }
+
+        private boolean matches(HistoryRecord record) {
+            return record.getTimeMillis() >= query.getFromMillis()
+                    && record.getTimeMillis() <= query.getToMillis()
+                    && (query.getPackageName() == null
+                    || query.getPackageName().equals(record.getPackageName()));
+        }
+    }
+
+    private static final class PendingRecord {
+
+        private final Callable<HistoryRecord> record;
+        private final Callable<String> content;
+
+        private PendingRecord(Callable<HistoryRecord> record, Callable<String> content) {
+            this.record = record;
+            this.content = content;
+        }
+
+        @Nullable
+        private HistoryRecord buildRecord() {
+            try {
+                return record.call();
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        @Nullable
+        private String buildContent() {
+            try {
+                return content != null ? content.call() : null;
+            } catch (Exception e) {
+                // the record is still searchable by its title and text
+                return null;
+            }
+        }
+    }
+
+    private static final class ChannelHourCounter {
+
+        private final String packageName;
+        private final String channelId;
+        private final long hourMillis;
+        private int count;
+
+        private ChannelHourCounter(String packageName, String channelId, long hourMillis) {
+            this.packageName = packageName;
+            this.channelId = channelId;
+            this.hourMillis = hourMillis;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Describes which history records should be queried
+ */
+public final class HistoryQuery {
+
+    private final String packageName;
+    private final long fromMillis;
+    private final long toMillis;
+    private final int pageSize;
+
+    private HistoryQuery(@NonNull Builder builder) {
+        this.packageName = builder.packageName;
+        this.fromMillis = builder.fromMillis;
+        this.toMillis = builder.toMillis;
+        this.pageSize = builder.pageSize;
+    }
+
+    /**
+     * Returns a new builder
+     */
+    @NonNull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the package name of the records or null for all packages
+     */
+    @Nullable
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the inclusive start of the time range
+     */
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    /**
+     * Returns the inclusive end of the time range
+     */
+    public long getToMillis() {
+        return toMillis;
+    }
+
+    /**
+     * Returns the max count of records per page
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Builds history queries
+     */
+    public static final class Builder {
+
+        private String packageName;
+        private long fromMillis;
+        private long toMillis = Long.MAX_VALUE;
+        private int pageSize = 100;
+
+        private Builder() {}
+
+        /**
+         * Only matches records of the package
+         */
+        @NonNull
+        public Builder packageName(@NonNull String packageName) {
+            if (packageName == null) {
+                throw new NullPointerException("packageName == null");
+            }
+            this.packageName = packageName;
+            return this;
+        }
+
+        /**
+         * Only matches records which were received within the time range
+         */
+        @NonNull
+        public Builder timeRange(long fromMillis, long toMillis) {
+            if (fromMillis > toMillis) {
+                throw new IllegalArgumentException("fromMillis must be <= toMillis");
+            }
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            return this;
+        }
+
+        /**
+         * Sets the max count of records per page
+         */
+        @NonNull
+        public Builder pageSize(int pageSize) {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("pageSize must be > 0");
+            }
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Returns the query
+         */
+        @NonNull
+        public HistoryQuery build() {
+            return new HistoryQuery(this);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.ivianuu.rxnotifications.NotificationEvent;
+
+/**
+ * Compact persisted copy of a notification event
+ */
+public final class HistoryRecord {
+
+    private final long id;
+    private final long timeMillis;
+    private final int eventType;
+    private final String key;
+    private final String packageName;
+    private final String channelId;
+    private final String title;
+    private final String text;
+
+    /**
+     * Constructs a new history record which gets its id once it was appended
+     */
+    public HistoryRecord(long timeMillis,
+                         @NotificationEvent.NotificationEventType int eventType,
+                         @NonNull String key,
+                         @NonNull String packageName,
+                         @Nullable String channelId,
+                         @Nullable String title,
+                         @Nullable String text) {
+        this(-1, timeMillis, eventType, key, packageName, channelId, title, text);
+    }
+
+    HistoryRecord(long id,
+                  long timeMillis,
+                  int eventType,
+                  @NonNull String key,
+                  @NonNull String packageName,
+                  @Nullable String channelId,
+                  @Nullable String title,
+                  @Nullable String text) {
+        this.id = id;
+        this.timeMillis = timeMillis;
+        this.eventType = eventType;
+        this.key = key;
+        this.packageName = packageName;
+        this.channelId = channelId;
+        this.title = title;
+        this.text = text;
+    }
+
+    /**
+     * Returns the position of this record in the journal or -1 if it was not read from a journal
+     * Ids are increasing monotonically in append order
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the wall clock time at which the event was received
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Returns the event type
+     */
+    @NotificationEvent.NotificationEventType
+    public int getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Returns the key of the notification
+     */
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the package name of the notification
+     */
+    @NonNull
+    public String getPackageName() {
+        return packageName;
+    }
+
+    /**
+     * Returns the channel id of the notification
+     */
+    @Nullable
+    public String getChannelId() {
+        return channelId;
+    }
+
+    /**
+     * Returns the title of the notification
+     */
+    @Nullable
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Returns the text of the notification
+     */
+    @Nullable
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Returns a copy of this record with the time
+     */
+    HistoryRecord withTimeMillis(long timeMillis) {
+        return new HistoryRecord(id, timeMillis, eventType, key, packageName, channelId, title, text);
+    }
+}
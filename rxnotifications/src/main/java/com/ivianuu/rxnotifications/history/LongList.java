@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import java.util.Arrays;
+
+/**
+ * Growable sorted list of primitive longs which can drop its head cheaply
+ */
+final class LongList {
+
+    private long[] values = new long[16];
+    private int start;
+    private int end;
+
+    void add(long value) {
+        if (end == values.length) {
+            if (start > values.length / 2) {
+                // reuse the space of the dropped head
+                System.arraycopy(values, start, values, 0, end - start);
+                end -= start;
+                start = 0;
+            } else {
+                long[] grown = new long[values.length * 2];
+                System.arraycopy(values, start, grown, 0, end - start);
+                end -= start;
+                start = 0;
+                values = grown;
+            }
+        }
+        values[end++] = value;
+    }
+
+    long get(int index) {
+        return values[start + index];
+    }
+
+    int size() {
+        return end - start;
+    }
+
+    void clear() {
+        start = 0;
+        end = 0;
+    }
+
+    void dropBefore(int index) {
+        start += index;
+    }
+
+    /**
+     * Sorts the values and removes duplicates
+     */
+    void sortUnique() {
+        Arrays.sort(values, start, end);
+        int unique = start;
+        for (int i = start; i < end; i++) {
+            if (unique == start || values[unique - 1] != values[i]) {
+                values[unique++] = values[i];
+            }
+        }
+        end = unique;
+    }
+
+    int lowerBound(long value) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid) < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
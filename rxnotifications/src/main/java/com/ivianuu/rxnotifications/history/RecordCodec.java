@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes history records as length prefixed and checksummed binary records
+ *
+ * Layout: int payload length, int crc32 of the payload, payload. A zero length marks the end.
+ */
+final class RecordCodec {
+
+    static final int HEADER_SIZE = 8;
+
+    // strings are truncated so a record always fits into the smallest segment
+    private static final int MAX_STRING_LENGTH = 1024;
+    static final int MAX_RECORD_SIZE = HEADER_SIZE + 8 + 1 + 5 * (2 + 3 * MAX_STRING_LENGTH);
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Writes the record at the position of the buffer and returns the written size or -1 if it doesn't fit
+     */
+    int write(@NonNull ByteBuffer buffer, int position, @NonNull HistoryRecord record) {
+        scratch.clear();
+        scratch.position(HEADER_SIZE);
+        scratch.putLong(record.getTimeMillis());
+        scratch.put((byte) record.getEventType());
+        putString(record.getKey());
+        putString(record.getPackageName());
+        putString(record.getChannelId());
+        putString(record.getTitle());
+        putString(record.getText());
+
+        int size = scratch.position();
+        if (position + size > buffer.capacity()) {
+            return -1;
+        }
+
+        int length = size - HEADER_SIZE;
+        crc.reset();
+        crc.update(scratch.array(), HEADER_SIZE, length);
+        scratch.putInt(4, (int) crc.getValue());
+
+        // the length is written last so readers never see a partially written record
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + 4);
+        target.put(scratch.array(), 4, size - 4);
+        buffer.putInt(position, length);
+        return size;
+    }
+
+    /**
+     * Returns the size of the valid record at the position or 0 if there is none
+     */
+    int check(@NonNull ByteBuffer buffer, int position, int limit) {
+        if (position + HEADER_SIZE > limit) {
+            return 0;
+        }
+
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > MAX_RECORD_SIZE - HEADER_SIZE
+                || position + HEADER_SIZE + length > limit) {
+            return 0;
+        }
+
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + HEADER_SIZE);
+        source.get(scratch.array(), 0, length);
+        crc.reset();
+        crc.update(scratch.array(), 0, length);
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+            return 0;
+        }
+
+        return HEADER_SIZE + length;
+    }
+
+    /**
+     * Decodes the record at the position which must have been checked before
+     */
+    @NonNull
+    static HistoryRecord read(@NonNull ByteBuffer buffer, int position, long id) {
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + HEADER_SIZE);
+        long timeMillis = source.getLong();
+        int eventType = source.get();
+        String key = getString(source);
+        String packageName = getString(source);
+        String channelId = getString(source);
+        String title = getString(source);
+        String text = getString(source);
+        return new HistoryRecord(id, timeMillis, eventType,
+                key != null ? key : "", packageName != null ? packageName : "",
+                channelId, title, text);
+    }
+
+    private void putString(@Nullable String value) {
+        if (value == null) {
+            scratch.putShort((short) -1);
+            return;
+        }
+
+        if (value.length() > MAX_STRING_LENGTH) {
+            value = value.substring(0, MAX_STRING_LENGTH);
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        scratch.putShort((short) bytes.length);
+        scratch.put(bytes);
+    }
+
+    @Nullable
+    private static String getString(ByteBuffer source) {
+        int length = source.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        source.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
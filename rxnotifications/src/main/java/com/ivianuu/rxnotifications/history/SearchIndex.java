@@ -0,0 +1,489 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Inverted index from the terms of the notification texts to history record ids
+ *
+ * New postings are buffered in memory and flushed to an immutable segment once the buffer is full.
+ * Segments are grouped into tiers of similar size and once a tier is full its segments are merged
+ * into one segment of the next tier in the background, so every posting is only rewritten once per tier.
+ * Postings of records which were deleted from the journal are dropped while merging.
+ */
+final class SearchIndex {
+
+    private static final String SEGMENT_PREFIX = "search-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int MAX_BUFFERED_POSTINGS = 16 * 1024;
+    private static final int SEGMENTS_PER_TIER = 4;
+    private static final long MIN_TIER_SIZE = 64 * 1024;
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 64;
+
+    private final File directory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            runnable -> new Thread(runnable, "RxNotifications-search"));
+
+    private final List<SearchSegment> segments = new CopyOnWriteArrayList<>();
+
+    // guarded by this
+    private Map<String, LongList> buffer = new HashMap<>();
+    private Map<String, LongList> flushing = Collections.emptyMap();
+    private int bufferedPostings;
+    private long bufferedMaxId = -1;
+    private boolean closed;
+
+    // only accessed by the executor
+    private long nextGeneration;
+
+    private volatile long minId;
+
+    SearchIndex(@NonNull File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Maps the persisted segments and returns the highest indexed id or -1
+     * Records with a higher id have to be added again
+     */
+    long open() throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("couldn't create " + directory);
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("couldn't list " + directory);
+        }
+        Arrays.sort(files);
+
+        long maxId = -1;
+        for (File file : files) {
+            String name = file.getName();
+            long generation = -1;
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    generation = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length()), 16);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            if (generation < 0) {
+                // unfinished temp files of a crashed flush or merge
+                file.delete();
+                continue;
+            }
+
+            try {
+                SearchSegment segment = SearchSegment.open(file, generation);
+                segments.add(segment);
+                maxId = Math.max(maxId, segment.maxId);
+                nextGeneration = Math.max(nextGeneration, generation + 1);
+            } catch (IOException e) {
+                file.delete();
+            }
+        }
+        return maxId;
+    }
+
+    /**
+     * Indexes the texts of the record with the id
+     */
+    void add(long id, @NonNull HistoryRecord record, @Nullable String content) {
+        Set<String> terms = new HashSet<>();
+        tokenize(record.getTitle(), terms, null);
+        tokenize(record.getText(), terms, null);
+        tokenize(content, terms, null);
+        if (terms.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (String term : terms) {
+                LongList ids = buffer.get(term);
+                if (ids == null) {
+                    ids = new LongList();
+                    buffer.put(term, ids);
+                }
+                ids.add(id);
+            }
+            bufferedPostings += terms.size();
+            bufferedMaxId = id;
+            if (bufferedPostings >= MAX_BUFFERED_POSTINGS && flushing.isEmpty()) {
+                startFlush();
+            }
+        }
+    }
+
+    /**
+     * Drops the postings of all ids lower than the min id
+     */
+    void trim(long minId) {
+        this.minId = minId;
+    }
+
+    /**
+     * Returns the ids of the records which contain all terms of the query from the newest to the oldest one
+     * Terms which end with a '*' match all terms with the prefix
+     */
+    @NonNull
+    List<Long> search(@NonNull String query, int limit) {
+        Set<String> terms = new HashSet<>();
+        Set<String> prefixes = new HashSet<>();
+        tokenize(query, terms, prefixes);
+        if (terms.isEmpty() && prefixes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long[] result = null;
+        for (String term : terms) {
+            result = intersect(result, getPostings(term, false));
+            if (result.length == 0) {
+                return Collections.emptyList();
+            }
+        }
+        for (String prefix : prefixes) {
+            result = intersect(result, getPostings(prefix, true));
+            if (result.length == 0) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<Long> ids = new ArrayList<>(Math.min(limit, result.length));
+        for (int i = result.length - 1; i >= 0 && ids.size() < limit; i--) {
+            ids.add(result[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * Flushes the buffered postings and releases the resources
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (flushing.isEmpty() && !buffer.isEmpty()) {
+                startFlush();
+            }
+        }
+        executor.shutdown();
+    }
+
+    private long[] getPostings(String term, boolean prefix) {
+        LongList ids = new LongList();
+        long minId = this.minId;
+        SearchSegment.getPostings(segments, term, prefix, minId, ids);
+        synchronized (this) {
+            collect(flushing, term, prefix, minId, ids);
+            collect(buffer, term, prefix, minId, ids);
+        }
+
+        // prefix matches and leftovers of an interrupted merge can contain an id multiple times
+        ids.sortUnique();
+        long[] sorted = new long[ids.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ids.get(i);
+        }
+        return sorted;
+    }
+
+    private static void collect(Map<String, LongList> postings, String term,
+                                boolean prefix, long minId, LongList target) {
+        if (!prefix) {
+            LongList ids = postings.get(term);
+            if (ids != null) {
+                addAll(ids, minId, target);
+            }
+            return;
+        }
+
+        for (Map.Entry<String, LongList> entry : postings.entrySet()) {
+            if (entry.getKey().startsWith(term)) {
+                addAll(entry.getValue(), minId, target);
+            }
+        }
+    }
+
+    private static void addAll(LongList ids, long minId, LongList target) {
+        for (int i = ids.lowerBound(minId); i < ids.size(); i++) {
+            target.add(ids.get(i));
+        }
+    }
+
+    private static long[] intersect(@Nullable long[] a, long[] b) {
+        if (a == null) {
+            return b;
+        }
+
+        long[] result = new long[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void startFlush() {
+        flushing = buffer;
+        buffer = new HashMap<>();
+        bufferedPostings = 0;
+        long maxId = bufferedMaxId;
+        executor.execute(() -> flush(maxId));
+    }
+
+    private void flush(long maxId) {
+        Map<String, LongList> postings;
+        synchronized (this) {
+            postings = flushing;
+        }
+
+        File file = segmentFile(nextGeneration);
+        SearchSegment.Writer writer = null;
+        try {
+            writer = new SearchSegment.Writer(file, maxId);
+            for (Map.Entry<String, LongList> entry : new TreeMap<>(postings).entrySet()) {
+                writer.write(entry.getKey(), entry.getValue());
+            }
+            writer.finish();
+            segments.add(SearchSegment.open(file, nextGeneration));
+            nextGeneration++;
+        } catch (IOException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            // keep the postings in memory and retry with the next flush
+            synchronized (this) {
+                for (Map.Entry<String, LongList> entry : postings.entrySet()) {
+                    LongList ids = buffer.get(entry.getKey());
+                    LongList merged = new LongList();
+                    addAll(entry.getValue(), 0, merged);
+                    if (ids != null) {
+                        addAll(ids, 0, merged);
+                    }
+                    buffer.put(entry.getKey(), merged);
+                }
+                flushing = Collections.emptyMap();
+            }
+            return;
+        }
+
+        synchronized (this) {
+            flushing = Collections.emptyMap();
+        }
+
+        dropTrimmedSegments();
+
+        List<SearchSegment> tier;
+        while ((tier = findFullTier()) != null && merge(tier)) {
+            // the merged segment can fill the next tier
+        }
+    }
+
+    /**
+     * Deletes the segments which only contain postings of deleted records
+     */
+    private void dropTrimmedSegments() {
+        long minId = this.minId;
+        List<SearchSegment> trimmed = new ArrayList<>();
+        for (SearchSegment segment : segments) {
+            if (segment.maxId < minId) {
+                trimmed.add(segment);
+            }
+        }
+        if (!trimmed.isEmpty()) {
+            segments.removeAll(trimmed);
+            for (SearchSegment segment : trimmed) {
+                segment.file.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the segments of the lowest tier which has enough segments to be merged or null
+     */
+    @Nullable
+    private List<SearchSegment> findFullTier() {
+        Map<Integer, List<SearchSegment>> tiers = new TreeMap<>();
+        for (SearchSegment segment : segments) {
+            int tier = getTier(segment.file.length());
+            List<SearchSegment> tierSegments = tiers.get(tier);
+            if (tierSegments == null) {
+                tierSegments = new ArrayList<>();
+                tiers.put(tier, tierSegments);
+            }
+            tierSegments.add(segment);
+        }
+
+        for (List<SearchSegment> tierSegments : tiers.values()) {
+            if (tierSegments.size() >= SEGMENTS_PER_TIER) {
+                return tierSegments;
+            }
+        }
+        return null;
+    }
+
+    private static int getTier(long size) {
+        int tier = 0;
+        for (long bound = MIN_TIER_SIZE; size > bound && tier < 32; bound *= SEGMENTS_PER_TIER) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Merges the segments into one and returns if it succeeded
+     */
+    private boolean merge(List<SearchSegment> merged) {
+        long maxId = -1;
+        for (SearchSegment segment : merged) {
+            maxId = Math.max(maxId, segment.maxId);
+        }
+
+        File file = segmentFile(nextGeneration);
+        SearchSegment.Writer writer = null;
+        try {
+            writer = new SearchSegment.Writer(file, maxId);
+            long minId = this.minId;
+            int[] positions = new int[merged.size()];
+            LongList ids = new LongList();
+            for (;;) {
+                // the smallest term of all segments is the next one to write
+                String term = null;
+                for (int i = 0; i < merged.size(); i++) {
+                    if (positions[i] < merged.get(i).getTermCount()) {
+                        String candidate = merged.get(i).getTerm(positions[i]);
+                        if (term == null || candidate.compareTo(term) < 0) {
+                            term = candidate;
+                        }
+                    }
+                }
+                if (term == null) {
+                    break;
+                }
+
+                ids.clear();
+                for (int i = 0; i < merged.size(); i++) {
+                    SearchSegment segment = merged.get(i);
+                    if (positions[i] < segment.getTermCount()
+                            && segment.getTerm(positions[i]).equals(term)) {
+                        segment.getPostings(positions[i], minId, ids);
+                        positions[i]++;
+                    }
+                }
+                // the id ranges of the merged segments can overlap and come in any order
+                ids.sortUnique();
+
+                if (ids.size() > 0) {
+                    writer.write(term, ids);
+                }
+            }
+            writer.finish();
+        } catch (IOException e) {
+            if (writer != null) {
+                writer.abort();
+            }
+            return false;
+        }
+
+        try {
+            segments.add(SearchSegment.open(file, nextGeneration));
+            nextGeneration++;
+        } catch (IOException e) {
+            file.delete();
+            return false;
+        }
+
+        // searches which still use the old segments keep their mappings
+        segments.removeAll(merged);
+        for (SearchSegment segment : merged) {
+            segment.file.delete();
+        }
+        return true;
+    }
+
+    private File segmentFile(long generation) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%016x", generation) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Splits the text into lower case terms, terms which end with a '*' are added to the prefixes if not null
+     */
+    private static void tokenize(@Nullable String text, Set<String> terms, @Nullable Set<String> prefixes) {
+        if (text == null) {
+            return;
+        }
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean letter = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (letter) {
+                if (start < 0) {
+                    start = i;
+                }
+                continue;
+            }
+
+            if (start >= 0) {
+                boolean prefix = prefixes != null && i < length && text.charAt(i) == '*';
+                if (i - start >= MIN_TERM_LENGTH || prefix) {
+                    String term = text.substring(start, Math.min(i, start + MAX_TERM_LENGTH))
+                            .toLowerCase(Locale.ROOT);
+                    (prefix ? prefixes : terms).add(term);
+                }
+                start = -1;
+            }
+        }
+    }
+}
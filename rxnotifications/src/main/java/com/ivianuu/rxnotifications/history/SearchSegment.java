@@ -0,0 +1,226 @@
+/*
+ * Copyright 2017 Manuel Wrage
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.ivianuu.rxnotifications.history;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Immutable memory mapped segment of the full text index
+ *
+ * Layout: header, one entry per term in sorted order, the entry offsets and a footer.
+ * An entry is the term followed by the sorted ids of the records which contain it.
+ */
+final class SearchSegment {
+
+    private static final int MAGIC = 0x52584654;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int FOOTER_SIZE = 8;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    final File file;
+    final long generation;
+    final long maxId;
+
+    private final MappedByteBuffer buffer;
+    private final int termCount;
+    private final int offsetsPosition;
+
+    private SearchSegment(File file, long generation, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.generation = generation;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE + FOOTER_SIZE
+                || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("corrupted segment " + file);
+        }
+        this.maxId = buffer.getLong(8);
+        this.termCount = buffer.getInt(buffer.capacity() - FOOTER_SIZE);
+        this.offsetsPosition = buffer.getInt(buffer.capacity() - 4);
+        if (termCount < 0 || offsetsPosition + 4L * termCount != buffer.capacity() - FOOTER_SIZE) {
+            throw new IOException("corrupted segment " + file);
+        }
+    }
+
+    /**
+     * Maps the segment file
+     */
+    @NonNull
+    static SearchSegment open(@NonNull File file, long generation) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            MappedByteBuffer buffer = randomAccessFile.getChannel()
+                    .map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+            return new SearchSegment(file, generation, buffer);
+        }
+    }
+
+    /**
+     * Returns the count of terms
+     */
+    int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Returns the term at the index
+     */
+    @NonNull
+    String getTerm(int index) {
+        ByteBuffer entry = entry(index);
+        byte[] bytes = new byte[entry.getShort()];
+        entry.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Returns the index of the first term which is greater or equal to the term
+     */
+    int lowerBound(@NonNull String term) {
+        int low = 0;
+        int high = termCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTerm(mid).compareTo(term) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds the ids of the term at the index which are greater or equal to the min id to the target
+     */
+    void getPostings(int index, long minId, @NonNull LongList target) {
+        ByteBuffer entry = entry(index);
+        int termLength = entry.getShort();
+        entry.position(entry.position() + termLength);
+        int count = entry.getInt();
+        for (int i = 0; i < count; i++) {
+            long id = entry.getLong();
+            if (id >= minId) {
+                target.add(id);
+            }
+        }
+    }
+
+    private ByteBuffer entry(int index) {
+        ByteBuffer entry = buffer.duplicate();
+        entry.position(buffer.getInt(offsetsPosition + 4 * index));
+        return entry;
+    }
+
+    /**
+     * Writes segments entry by entry so merges never hold all postings in memory
+     */
+    static final class Writer {
+
+        private final File tempFile;
+        private final File file;
+        private final FileOutputStream fileOut;
+        private final DataOutputStream out;
+        private final LongList offsets = new LongList();
+        private int position;
+
+        Writer(@NonNull File file, long maxId) throws IOException {
+            this.file = file;
+            this.tempFile = new File(file.getPath() + ".tmp");
+            this.fileOut = new FileOutputStream(tempFile);
+            this.out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(maxId);
+            position = HEADER_SIZE;
+        }
+
+        /**
+         * Writes the entry of the next term in sorted order
+         */
+        void write(@NonNull String term, @NonNull LongList ids) throws IOException {
+            byte[] bytes = term.getBytes(UTF_8);
+            offsets.add(position);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            out.writeInt(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                out.writeLong(ids.get(i));
+            }
+            position += 2 + bytes.length + 4 + 8 * ids.size();
+        }
+
+        /**
+         * Finishes the segment and atomically moves it to its final file
+         */
+        void finish() throws IOException {
+            for (int i = 0; i < offsets.size(); i++) {
+                out.writeInt((int) offsets.get(i));
+            }
+            out.writeInt(offsets.size());
+            out.writeInt(position);
+            out.flush();
+            // the rename must not become visible before the content is on disk
+            // because merges delete their inputs once the segment exists
+            fileOut.getFD().sync();
+            out.close();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("couldn't rename " + tempFile);
+            }
+        }
+
+        /**
+         * Discards the unfinished segment
+         */
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Adds the ids of all segments for the term to the target in id order
+     */
+    static void getPostings(@NonNull List<SearchSegment> segments, @NonNull String term,
+                            boolean prefix, long minId, @NonNull LongList target) {
+        for (SearchSegment segment : segments) {
+            for (int i = segment.lowerBound(term); i < segment.termCount; i++) {
+                String candidate = segment.getTerm(i);
+                if (prefix ? !candidate.startsWith(term) : !candidate.equals(term)) {
+                    break;
+                }
+                segment.getPostings(i, minId, target);
+            }
+        }
+    }
+}